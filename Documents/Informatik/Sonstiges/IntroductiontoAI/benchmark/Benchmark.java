@@ -0,0 +1,331 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * micro benchmarks for the hot paths: tokenization, dictionary, indexing, weighting, similarity
+ * and reading uncompressed and compressed postings
+ *
+ * the benchmarks run on a synthetic corpus whose words follow a Zipf distribution, every
+ * benchmark is warmed up before it is measured. Like the forks of JMH every benchmark runs
+ * in a JVM of its own, so code compiled and garbage left by one benchmark cannot influence
+ * the next; "-forks 0" runs all of them in this JVM. Besides the time per operation the bytes
+ * allocated per operation (like the gc profiler of JMH) and the garbage collections during
+ * the measurement are reported, so regressions in the hot paths show up from release to release
+ *
+ * the benchmarks are kept in their own source folder and are not part of the program,
+ * compile them with the classes of src on the classpath
+ *
+ * usage: Benchmark [-docs &lt;n&gt;] [-words &lt;words per document&gt;] [-vocabulary &lt;n&gt;] [-zipf &lt;exponent&gt;]
+ *                  [-warmup &lt;iterations&gt;] [-iterations &lt;iterations&gt;] [-seed &lt;n&gt;] [-forks &lt;n&gt;]
+ *                  [-only &lt;benchmark&gt;]
+ *
+ */
+public class Benchmark {
+
+	private int numberOfDocuments = 1000;
+	private int wordsPerDocument = 300;
+	private int vocabularySize = 50000;
+	private double zipfExponent = 1.0;
+	private int warmupIterations = 5;
+	private int measuredIterations = 10;
+	private long seed = 42;
+	private int forks = 1;									// JVMs started for every benchmark, 0 to run in this JVM
+	private String only;									// name of the single benchmark to run, null for all
+
+	private static final int DENSE_DIMENSION = 256;			// length of the dense vectors of the similarity kernel
+	private static final String[] BENCHMARKS = { "DocumentModel.getWords", "Dictionary.addWord", "Dictionary.indexOfWord",
+			"InvertedIndex.addRelation", "DocumentVectorModel.computeWeights", "DocumentVectorModel.cosineSimilarity",
+			"DocumentTermMatrix.cosineSimilarity", "SimilarityKernel.cosineSimilarities", "PostingsList.cursor",
+			"CompressedPostings.cursor", "PostingsList.advance", "CompressedPostings.advance" };
+	private static final String HEADER = String.format("%-36s %14s %14s %14s %6s %8s", "benchmark", "ns/op", "ops/s", "bytes/op", "gc", "gc ms");
+
+	private ArrayList<String> texts;						// synthetic documents as text
+	private ArrayList<ArrayList<String>> wordLists;			// the same documents as word lists
+	private Dictionary dictionary;
+	private InvertedIndex invertedIndex;
+	private ArrayList<DocumentVectorModel> vectors;
+	private float[] denseBlock;								// dense vectors of DENSE_DIMENSION one after another
+	private long sink;										// keeps the JIT from removing results
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Benchmark benchmark = new Benchmark();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "-docs":		benchmark.numberOfDocuments = Integer.parseInt(args[i + 1]); break;
+			case "-words":		benchmark.wordsPerDocument = Integer.parseInt(args[i + 1]); break;
+			case "-vocabulary":	benchmark.vocabularySize = Integer.parseInt(args[i + 1]); break;
+			case "-zipf":		benchmark.zipfExponent = Double.parseDouble(args[i + 1]); break;
+			case "-warmup":		benchmark.warmupIterations = Integer.parseInt(args[i + 1]); break;
+			case "-iterations":	benchmark.measuredIterations = Integer.parseInt(args[i + 1]); break;
+			case "-seed":		benchmark.seed = Long.parseLong(args[i + 1]); break;
+			case "-forks":		benchmark.forks = Integer.parseInt(args[i + 1]); break;
+			case "-only":		benchmark.only = args[i + 1]; break;
+			default:			System.err.println("unknown option " + args[i]);
+			}
+		}
+		if (benchmark.forks > 0)
+			benchmark.fork(args);
+		else
+			benchmark.run();
+	}
+
+	/**
+	 * runs every selected benchmark forks times, each time in a new JVM with the same options
+	 * and the same JVM arguments as this one
+	 *
+	 * @param args - the options of this run, passed on to the forked JVMs
+	 */
+	private void fork(String[] args) throws IOException, InterruptedException {
+		System.out.println(numberOfDocuments + " documents, " + wordsPerDocument + " words each, vocabulary "
+				+ vocabularySize + ", zipf exponent " + zipfExponent + ", " + forks + " fork(s)");
+		System.out.println(HEADER);
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		for (String name : BENCHMARKS) {
+			if (only != null && !only.equals(name))
+				continue;
+			for (int f = 0; f < forks; f++) {
+				List<String> command = new ArrayList<>();
+				command.add(java);
+				command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(Benchmark.class.getName());
+				command.addAll(Arrays.asList(args));
+				command.addAll(Arrays.asList("-forks", "0", "-only", name));		// the last options win
+				Process process = new ProcessBuilder(command).inheritIO().start();
+				if (process.waitFor() != 0)
+					System.err.println(name + ": forked JVM exited with " + process.exitValue());
+			}
+		}
+	}
+
+	/**
+	 * creates the corpus and runs every benchmark
+	 */
+	public void run() {
+		if (only == null) {										// a forked JVM only prints its result line
+			System.out.println(numberOfDocuments + " documents, " + wordsPerDocument + " words each, vocabulary "
+					+ vocabularySize + ", zipf exponent " + zipfExponent);
+			System.out.println(HEADER);
+		}
+		createCorpus();
+
+		measure("DocumentModel.getWords", numberOfDocuments, () -> {
+			for (String text : texts)
+				sink += DocumentModel.getWords(text).size();
+		});
+		measure("Dictionary.addWord", (long) numberOfDocuments * wordsPerDocument, () -> {
+			Dictionary d = new Dictionary();
+			for (ArrayList<String> words : wordLists) {
+				for (String word : words)
+					sink += d.addWord(word);
+			}
+		});
+		measure("Dictionary.indexOfWord", (long) numberOfDocuments * wordsPerDocument, () -> {
+			for (ArrayList<String> words : wordLists) {
+				for (String word : words)
+					sink += dictionary.indexOfWord(word);
+			}
+		});
+		measure("InvertedIndex.addRelation", numberOfDocuments, () -> {
+			InvertedIndex index = new InvertedIndex(dictionary);
+			for (int d = 0; d < wordLists.size(); d++)
+				sink += index.addRelation(wordLists.get(d), "doc" + d);
+		});
+		measure("DocumentVectorModel.computeWeights", numberOfDocuments, () -> {
+			for (DocumentVectorModel vector : vectors)
+				vector.computeWeights();
+		});
+		int pairs = Math.min(numberOfDocuments, 200);
+		measure("DocumentVectorModel.cosineSimilarity", (long) pairs * pairs, () -> {
+			double sum = 0;
+			for (int i = 0; i < pairs; i++) {
+				for (int j = 0; j < pairs; j++)
+					sum += DocumentVectorModel.cosineSimilarity(vectors.get(i), vectors.get(j));
+			}
+			sink += (long) sum;
+		});
+		DocumentTermMatrix documents = new DocumentTermMatrix(vectors);
+		measure("DocumentTermMatrix.cosineSimilarity", (long) pairs * pairs, () -> {
+			double sum = 0;
+			for (int i = 0; i < pairs; i++) {
+				for (int j = 0; j < pairs; j++)
+					sum += documents.cosineSimilarity(i, j);
+			}
+			sink += (long) sum;
+		});
+		float[] similarities = new float[numberOfDocuments];
+		measure("SimilarityKernel.cosineSimilarities", (long) pairs * numberOfDocuments, () -> {
+			float[] query = new float[DENSE_DIMENSION];
+			for (int i = 0; i < pairs; i++) {
+				System.arraycopy(denseBlock, i * DENSE_DIMENSION, query, 0, DENSE_DIMENSION);
+				SimilarityKernel.cosineSimilarities(query, denseBlock, numberOfDocuments, DENSE_DIMENSION, similarities);
+				sink += (long) similarities[i];
+			}
+		});
+		PostingsList longest = null;							// postings of the most frequent word
+		for (int t = 0; t < dictionary.length(); t++) {
+			PostingsList list = invertedIndex.getPostings(t);
+			if (list != null && (longest == null || list.size() > longest.size()))
+				longest = list;
+		}
+		PostingsList uncompressed = longest;
+		CompressedPostings compressed = new CompressedPostings(longest);
+		measure("PostingsList.cursor", uncompressed.size(), () -> sink += walk(uncompressed.cursor(), 1));
+		measure("CompressedPostings.cursor", compressed.size(), () -> sink += walk(compressed.cursor(), 1));
+		int stops = stops(uncompressed.cursor(), 64);			// postings the cursor is advanced to
+		measure("PostingsList.advance", stops, () -> sink += walk(uncompressed.cursor(), 64));
+		measure("CompressedPostings.advance", stops, () -> sink += walk(compressed.cursor(), 64));
+		if (only == null) {
+			System.out.println("postings of the most frequent word: " + 8L * uncompressed.size() + " bytes uncompressed, "
+					+ compressed.sizeInBytes() + " compressed");
+			System.out.println("(" + sink + ")");
+		}
+	}
+
+	/**
+	 * @return int number of postings walk() stops at, at least 1
+	 */
+	private static int stops(PostingsCursor cursor, int stride) {
+		int stops = 0;
+		for (int doc = cursor.docId(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.advance(doc + stride))
+			stops++;
+		return Math.max(1, stops);
+	}
+
+	/**
+	 * walks over the postings, reading the frequency of the postings it stops at
+	 *
+	 * @param stride - gap between the docIDs the cursor is advanced to, 1 to read every posting
+	 */
+	private static long walk(PostingsCursor cursor, int stride) {
+		long sum = 0;
+		for (int doc = cursor.docId(); doc != PostingsCursor.NO_MORE_DOCS; ) {
+			sum += doc + cursor.frequency();
+			if (stride == 1) {
+				cursor.next();
+				doc = cursor.docId();
+			}
+			else
+				doc = cursor.advance(doc + stride);
+		}
+		return sum;
+	}
+
+	/**
+	 * builds the texts, the dictionary, the index and the vectors of the synthetic corpus
+	 */
+	private void createCorpus() {
+		Random random = new Random(seed);
+		double[] cumulative = new double[vocabularySize];		// cumulative Zipf distribution over the ranks
+		double sum = 0;
+		for (int rank = 0; rank < vocabularySize; rank++) {
+			sum += 1.0 / Math.pow(rank + 1, zipfExponent);
+			cumulative[rank] = sum;
+		}
+
+		texts = new ArrayList<>();
+		wordLists = new ArrayList<>();
+		dictionary = new Dictionary();
+		StringBuilder text = new StringBuilder();
+		for (int d = 0; d < numberOfDocuments; d++) {
+			text.setLength(0);
+			for (int w = 0; w < wordsPerDocument; w++) {
+				int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+				text.append("term").append(rank < 0 ? -rank - 1 : rank).append(w % 12 == 11 ? ". " : " ");
+			}
+			texts.add(text.toString());
+			ArrayList<String> words = DocumentModel.getWords(text.toString());
+			wordLists.add(words);
+			for (String word : words)
+				dictionary.addWord(word);
+		}
+		dictionary.freeze();
+
+		invertedIndex = new InvertedIndex(dictionary);
+		for (int d = 0; d < numberOfDocuments; d++)
+			invertedIndex.addRelation(wordLists.get(d), "doc" + d);
+		vectors = new ArrayList<>();
+		for (int d = 0; d < numberOfDocuments; d++) {
+			int[] termIds = new int[wordsPerDocument];
+			int count = 0;
+			for (String word : wordLists.get(d))
+				termIds[count++] = dictionary.indexOfWord(word);
+			vectors.add(new DocumentVectorModel(countTerms("doc" + d, termIds, count), invertedIndex, numberOfDocuments));
+		}
+		denseBlock = new float[numberOfDocuments * DENSE_DIMENSION];
+		for (int i = 0; i < denseBlock.length; i++)
+			denseBlock[i] = random.nextFloat();
+	}
+
+	/**
+	 * sorts the term IDs and counts them
+	 */
+	private static DocumentTerms countTerms(String docName, int[] termIds, int count) {
+		Arrays.sort(termIds, 0, count);
+		int[] ids = new int[count];
+		int[] frequencies = new int[count];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			if (size > 0 && ids[size - 1] == termIds[i])
+				frequencies[size - 1]++;
+			else {
+				ids[size] = termIds[i];
+				frequencies[size++] = 1;
+			}
+		}
+		return new DocumentTerms(docName, 0, count, Arrays.copyOf(ids, size),
+				Arrays.copyOf(frequencies, size), null, null);
+	}
+
+	/**
+	 * runs the benchmark warmupIterations times, then measures measuredIterations runs,
+	 * does nothing if another benchmark was selected with "-only"
+	 *
+	 * @param name - printed name of the benchmark
+	 * @param operations - number of operations done by one run
+	 * @param body - one run of the benchmark
+	 */
+	private void measure(String name, long operations, Runnable body) {
+		if (only != null && !only.equals(name))
+			return;
+		operations = Math.max(1, operations);
+		for (int i = 0; i < warmupIterations; i++)
+			body.run();
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long gcCount = gcCount(), gcTime = gcTime();
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < measuredIterations; i++)
+			body.run();
+		long elapsed = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+		double totalOperations = (double) operations * measuredIterations;
+		System.out.println(String.format("%-36s %14.1f %14.0f %14.1f %6d %8d", name, elapsed / totalOperations,
+				totalOperations / (elapsed / 1e9), allocated / totalOperations, gcCount() - gcCount, gcTime() - gcTime));
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(gc.getCollectionCount(), 0);
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			time += Math.max(gc.getCollectionTime(), 0);
+		return time;
+	}
+}
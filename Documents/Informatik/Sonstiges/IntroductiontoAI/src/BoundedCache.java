@@ -0,0 +1,112 @@
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * cache holding at most maxWeight of values, the least recently used ones are evicted first
+ *
+ * every value has a weight given by the weigher (e.g. its number of words), so a few
+ * large values cannot push out many small ones unnoticed. Hits, misses and evictions
+ * are counted. All methods are synchronized
+ *
+ * @param <K> - key
+ * @param <V> - cached value
+ */
+public class BoundedCache<K, V> {
+
+	private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);	// in access order
+	private final long maxWeight;
+	private final ToIntFunction<V> weigher;
+	private long weight;
+
+	private long hits, misses, evictions;
+
+	/**
+	 * @param maxWeight - highest sum of the weights of the cached values
+	 * @param weigher - weight of a value, at least 1
+	 */
+	public BoundedCache(long maxWeight, ToIntFunction<V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * @param key
+	 * @return the cached value, null if it is not cached
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+		if (value == null)
+			misses++;
+		else
+			hits++;
+		return value;
+	}
+
+	/**
+	 * caches the value and evicts the least recently used values until the weight fits,
+	 * a value heavier than maxWeight is not cached at all
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public synchronized void put(K key, V value) {
+		int valueWeight = Math.max(weigher.applyAsInt(value), 1);
+		if (valueWeight > maxWeight)
+			return;
+		V old = entries.put(key, value);
+		if (old != null)
+			weight -= Math.max(weigher.applyAsInt(old), 1);
+		weight += valueWeight;
+		for (Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator(); weight > maxWeight && it.hasNext(); ) {
+			Map.Entry<K, V> eldest = it.next();
+			weight -= Math.max(weigher.applyAsInt(eldest.getValue()), 1);
+			it.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * removes every value, the statistics are kept
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 *
+	 * @return double value of the share of lookups answered from the cache
+	 */
+	public synchronized double getHitRate() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return entries.size() + " entries, weight " + weight + " of " + maxWeight + ", " + hits + " hits, "
+				+ misses + " misses, " + evictions + " evictions";
+	}
+}
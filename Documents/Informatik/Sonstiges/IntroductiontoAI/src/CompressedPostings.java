@@ -0,0 +1,274 @@
+
+import java.util.Arrays;
+
+/**
+ * docIDs and term frequencies of one word, compressed in blocks of BLOCK_SIZE postings
+ *
+ * within a block the docIDs are stored as gaps to the previous docID and the frequencies
+ * minus 1, each packed with the smallest number of bits that fits the largest value of
+ * the block (frame of reference, like PFor without exceptions). The last docID of every
+ * block forms a one-level skip list, so a cursor can jump over blocks whose docIDs are
+ * all below its target without decoding them, and only the frequencies asked for are
+ * extracted. Unpacking the docIDs is one fixed-length loop per block without branches on
+ * the values. Positions are not compressed, the cursors read them from the field of the
+ * PostingsList
+ *
+ */
+public class CompressedPostings {
+
+	public static final int BLOCK_SIZE = 128;
+
+	private final int _size;
+	private final int[] _lastDocIds;		// last docID of every block, the skip list
+	private final int[] _blockOffsets;		// start of every block in _data, one more entry than blocks
+	private final byte[] _docIdBits;		// bits per docID gap of every block
+	private final byte[] _frequencyBits;	// bits per frequency of every block
+	private final int[] _data;
+	private final int[] _positions;			// positions of the PostingsList, null if not positional
+	private final int[] _positionOffsets;	// start of the positions of posting i in _positions, one more entry than postings
+
+	/**
+	 * compresses the docIDs and frequencies of the postings
+	 *
+	 * @param list
+	 */
+	public CompressedPostings(PostingsList list) {
+		_size = list.size();
+		int blocks = (_size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		_lastDocIds = new int[blocks];
+		_blockOffsets = new int[blocks + 1];
+		_docIdBits = new byte[blocks];
+		_frequencyBits = new byte[blocks];
+		int[] data = new int[Math.max(blocks, 1) * 4];
+		int[] gaps = new int[BLOCK_SIZE];
+		int[] frequencies = new int[BLOCK_SIZE];
+		int offset = 0, previous = 0;
+		for (int b = 0; b < blocks; b++) {
+			int start = b * BLOCK_SIZE, count = Math.min(BLOCK_SIZE, _size - start);
+			int gapBits = 0, frequencyBits = 0;
+			for (int i = 0; i < count; i++) {
+				int docId = list.getDocId(start + i);
+				gaps[i] = docId - previous;
+				frequencies[i] = list.getFrequency(start + i) - 1;
+				previous = docId;
+				gapBits |= gaps[i];
+				frequencyBits |= frequencies[i];
+			}
+			_docIdBits[b] = (byte) (32 - Integer.numberOfLeadingZeros(gapBits));
+			_frequencyBits[b] = (byte) (32 - Integer.numberOfLeadingZeros(frequencyBits));
+			_lastDocIds[b] = previous;
+			int words = packedLength(count, _docIdBits[b]) + packedLength(count, _frequencyBits[b]);
+			if (offset + words > data.length)
+				data = Arrays.copyOf(data, Math.max(data.length * 2, offset + words));
+			_blockOffsets[b] = offset;
+			offset = pack(gaps, count, _docIdBits[b], data, offset);
+			offset = pack(frequencies, count, _frequencyBits[b], data, offset);
+		}
+		_blockOffsets[blocks] = offset;
+		_data = Arrays.copyOf(data, offset);
+		if (list.hasPositions()) {
+			_positions = list.get_positions();
+			_positionOffsets = new int[_size + 1];
+			for (int i = 0; i < _size; i++)
+				_positionOffsets[i + 1] = list.getPositionEnd(i);
+			if (_size > 0)
+				_positionOffsets[0] = list.getPositionStart(0);
+		}
+		else {
+			_positions = null;
+			_positionOffsets = null;
+		}
+	}
+
+	/**
+	 * @return int number of ints holding count values of the given bits
+	 */
+	private static int packedLength(int count, int bits) {
+		return (int) (((long) count * bits + 31) >>> 5);
+	}
+
+	/**
+	 * writes the lowest bits of every value one after another into the ints starting at offset
+	 *
+	 * @return int offset behind the last written int
+	 */
+	private static int pack(int[] values, int count, int bits, int[] out, int offset) {
+		if (bits == 0)
+			return offset;
+		long buffer = 0;
+		int filled = 0;
+		for (int i = 0; i < count; i++) {
+			buffer |= (values[i] & 0xFFFFFFFFL) << filled;
+			filled += bits;
+			if (filled >= 32) {
+				out[offset++] = (int) buffer;
+				buffer >>>= 32;
+				filled -= 32;
+			}
+		}
+		if (filled > 0)
+			out[offset++] = (int) buffer;
+		return offset;
+	}
+
+	/**
+	 * reads count values of the given bits written by pack()
+	 */
+	private static void unpack(int[] data, int offset, int bits, int[] out, int count) {
+		if (bits == 0) {
+			Arrays.fill(out, 0, count, 0);
+			return;
+		}
+		long mask = (1L << bits) - 1;
+		long buffer = 0;
+		int filled = 0;
+		for (int i = 0; i < count; i++) {
+			if (filled < bits) {
+				buffer |= (data[offset++] & 0xFFFFFFFFL) << filled;
+				filled += 32;
+			}
+			out[i] = (int) (buffer & mask);
+			buffer >>>= bits;
+			filled -= bits;
+		}
+	}
+
+	/**
+	 * reads the value at the index of values of the given bits written by pack()
+	 */
+	private static int extract(int[] data, int offset, int bits, int index) {
+		if (bits == 0)
+			return 0;
+		long bit = (long) index * bits;
+		int word = offset + (int) (bit >>> 5);
+		int shift = (int) (bit & 31);
+		long value = (data[word] & 0xFFFFFFFFL) >>> shift;
+		if (shift + bits > 32)
+			value |= (data[word + 1] & 0xFFFFFFFFL) << (32 - shift);
+		return (int) (value & ((1L << bits) - 1));
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of postings
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of blocks
+	 */
+	public int blocks() {
+		return _lastDocIds.length;
+	}
+
+	/**
+	 *
+	 * @return long value of the bytes used by the compressed postings and the skip list, without the positions
+	 */
+	public long sizeInBytes() {
+		return 4L * (_data.length + _lastDocIds.length + _blockOffsets.length) + 2L * _docIdBits.length;
+	}
+
+	/**
+	 * @return PostingsCursor decoding one block at a time
+	 */
+	public PostingsCursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * keeps the docIDs of the current block, a frequency is extracted when it is asked for
+	 */
+	private class Cursor implements PostingsCursor {
+		private final int[] docIds = new int[BLOCK_SIZE];
+		private int block = -1;
+		private int blockSize;
+		private int index;
+		private int frequencyOffset;			// start of the frequencies of the block in _data
+
+		Cursor() {
+			load(0);
+		}
+
+		/**
+		 * unpacks the docIDs of the block, or moves behind the last posting
+		 */
+		private void load(int b) {
+			block = b;
+			index = 0;
+			if (b >= _lastDocIds.length) {
+				blockSize = 0;
+				return;
+			}
+			blockSize = Math.min(BLOCK_SIZE, _size - b * BLOCK_SIZE);
+			frequencyOffset = _blockOffsets[b] + packedLength(blockSize, _docIdBits[b]);
+			unpack(_data, _blockOffsets[b], _docIdBits[b], docIds, blockSize);
+			int docId = b == 0 ? 0 : _lastDocIds[b - 1];
+			for (int i = 0; i < blockSize; i++) {
+				docId += docIds[i];
+				docIds[i] = docId;
+			}
+		}
+
+		@Override
+		public int docId() {
+			return index < blockSize ? docIds[index] : NO_MORE_DOCS;
+		}
+
+		@Override
+		public int frequency() {
+			return extract(_data, frequencyOffset, _frequencyBits[block], index) + 1;
+		}
+
+		@Override
+		public void next() {
+			if (++index == blockSize && block < _lastDocIds.length)
+				load(block + 1);
+		}
+
+		@Override
+		public int advance(int target) {
+			if (docId() >= target)
+				return docId();
+			if (_lastDocIds[block] < target) {			// skip the blocks ending below the target
+				int low = block + 1, high = _lastDocIds.length;
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (_lastDocIds[middle] < target)
+						low = middle + 1;
+					else
+						high = middle;
+				}
+				load(low);
+				if (blockSize == 0)
+					return NO_MORE_DOCS;
+			}
+			while (docIds[index] < target)				// the last docID of the block is at least the target
+				index++;
+			return docIds[index];
+		}
+
+		@Override
+		public int size() {
+			return _size;
+		}
+
+		@Override
+		public int[] positions() {
+			return _positions;
+		}
+
+		@Override
+		public int positionStart() {
+			return _positionOffsets[block * BLOCK_SIZE + index];
+		}
+
+		@Override
+		public int positionEnd() {
+			return _positionOffsets[block * BLOCK_SIZE + index + 1];
+		}
+	}
+}
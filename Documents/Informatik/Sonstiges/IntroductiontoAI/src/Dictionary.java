@@ -1,72 +1,316 @@
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * creates a unique ArrayList containing unique String values
+ * maps unique String values to dense int term IDs
+ *
+ * the words are kept in an open-addressing hash table (linear probing) next to
+ * an array holding the word of every term ID, so addWord, containsWord and
+ * indexOfWord run in O(1). Until the dictionary is frozen the IDs are only
+ * provisional; freeze() sorts the words once and gives every word its final ID
  * @author marcogoette
  *
  */
 public class Dictionary {
 
-	private ArrayList<String> _wordList; // <String> added
+	private static final int EMPTY = -1;			// marks a free slot in the hash table
+	private static final int INITIAL_CAPACITY = 16;	// has to be a power of two
+
+	private String[] _terms;		// contains the word of every term ID, null if the word was removed
+	private int[] _table;			// hash table containing term IDs, EMPTY if the slot is free
+	private int _nextId;			// next term ID to be handed out
+	private int _size;				// number of words currently in the dictionary
+	private boolean _frozen;		// true once the term IDs are final
 
 	public Dictionary() {
-		_wordList = new ArrayList<String>();
+		_terms = new String[INITIAL_CAPACITY];
+		_table = new int[INITIAL_CAPACITY * 2];
+		Arrays.fill(_table, EMPTY);
+	}
+
+	/**
+	 * adds a unique String value to the dictionary
+	 *
+	 * words added after freeze() are appended at the end, so the IDs of the
+	 * frozen words stay stable
+	 *
+	 * @param word
+	 * @return int term ID of the word
+	 */
+	public int addWord(String word) {
+		int hash = hash(word);
+		int slot = findSlot(word, hash);
+		if (_table[slot] != EMPTY)
+			return _table[slot];
+
+		if (_nextId == _terms.length)
+			_terms = Arrays.copyOf(_terms, _terms.length * 2);
+		int id = _nextId++;
+		_terms[id] = word;
+		_table[slot] = id;
+		_size++;
+		if (_size * 2 > _table.length)						// keep the load factor below 0.5
+			rehash(_table.length * 2);
+		return id;
 	}
 
 	/**
-	 * adds a unique String value to the ArrayList
-	 * 
+	 * adds the word made of the characters to the dictionary, a String is only
+	 * created if the word is new
+	 *
+	 * @param buffer
+	 * @param offset - index of the first character of the word
+	 * @param length - number of characters of the word
+	 * @return int term ID of the word
+	 */
+	public int addWord(char[] buffer, int offset, int length) {
+		int id = indexOfWord(buffer, offset, length);
+		return id != -1 ? id : addWord(new String(buffer, offset, length));
+	}
+
+	/**
+	 * removes the String parameter from the dictionary (e.g. a stopword)
+	 *
+	 * only possible as long as the dictionary is not frozen, the provisional ID
+	 * of the word is not handed out again
+	 *
 	 * @param word
+	 * @return boolean value - true if the word was part of the dictionary
 	 */
-	public void addWord(String word) {
-		if (_wordList.contains(word) == false)
-			_wordList.add(word);
+	public boolean removeWord(String word) {
+		if (_frozen)
+			throw new IllegalStateException("cannot remove words from a frozen dictionary");
+		int slot = findSlot(word, hash(word));
+		if (_table[slot] == EMPTY)
+			return false;
+
+		_terms[_table[slot]] = null;
+		_size--;
 
-		// sort list again --> done once when dictionary is finished for efficiency purposes
+		// backward shift deletion: move following entries of the probe sequence into the gap
+		int mask = _table.length - 1;
+		int gap = slot;
+		int i = (slot + 1) & mask;
+		while (_table[i] != EMPTY) {
+			int home = hash(_terms[_table[i]]) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				_table[gap] = _table[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		_table[gap] = EMPTY;
+		return true;
 	}
 
 	/**
-	 * Sorts the dictionary using the natural ordering
+	 * Sorts the dictionary using the natural ordering and freezes the term IDs
 	 */
 	public void sortDictionary() {
-		_wordList.sort(null);
+		freeze();
+	}
+
+	/**
+	 * sorts all words using the natural ordering and assigns the final, dense
+	 * term IDs 0 .. length()-1 in that order
+	 *
+	 * calling freeze() on a frozen dictionary does not change any ID
+	 *
+	 * @return int field mapping every provisional ID to its final ID, -1 for
+	 *         removed words
+	 */
+	public int[] freeze() {
+		int[] remap = new int[_nextId];
+		if (_frozen) {
+			for (int i = 0; i < _nextId; i++)
+				remap[i] = i;
+			return remap;
+		}
+
+		Integer[] order = new Integer[_nextId];
+		for (int i = 0; i < _nextId; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> {
+			if (_terms[a] == null || _terms[b] == null)					// removed words go to the end
+				return _terms[a] == null ? (_terms[b] == null ? 0 : 1) : -1;
+			return _terms[a].compareTo(_terms[b]);
+		});
+
+		Arrays.fill(remap, -1);
+		String[] sorted = new String[Math.max(_size, INITIAL_CAPACITY)];
+		for (int i = 0; i < _size; i++) {
+			sorted[i] = _terms[order[i]];
+			remap[order[i]] = i;
+		}
+		_terms = sorted;
+		_nextId = _size;
+		_frozen = true;
+		rehash(_table.length);
+		return remap;
+	}
+
+	/**
+	 * replaces the content with words whose IDs are already final, e.g. read by
+	 * IndexStore; the word at index i gets term ID i
+	 *
+	 * @param terms
+	 */
+	void setFrozenTerms(String[] terms) {
+		_terms = terms.length < INITIAL_CAPACITY ? Arrays.copyOf(terms, INITIAL_CAPACITY) : terms;
+		_nextId = terms.length;
+		_size = terms.length;
+		_frozen = true;
+		int capacity = INITIAL_CAPACITY * 2;
+		while (capacity < _size * 2)
+			capacity *= 2;
+		rehash(capacity);
 	}
 
 	/**
-	 * Checks if the _wordList contains the String parameter
-	 * 
+	 *
+	 * @return boolean value - true if the term IDs are final
+	 */
+	public boolean isFrozen() {
+		return _frozen;
+	}
+
+	/**
+	 * Checks if the dictionary contains the String parameter
+	 *
 	 * @param word
-	 * @return boolean value - true it the _wordList contains the parameter
+	 * @return boolean value - true it the dictionary contains the parameter
 	 */
 	public boolean containsWord(String word) {
-		return _wordList.contains(word);
+		return indexOfWord(word) != -1;
 	}
 
 	/**
-	 * 
-	 * @return int value representing the size of the _wordList
+	 *
+	 * @return int value representing the number of words in the dictionary
 	 */
 	public int length() {
-		return _wordList.size();
+		return _size;
 	}
 
 	/**
-	 * returns the index of the String parameter if contained in the _wordList if
-	 * not returns -1
-	 * 
+	 * returns the term ID of the String parameter if contained in the dictionary
+	 * if not returns -1
+	 *
 	 * @param word
 	 * @return int index
 	 */
 	public int indexOfWord(String word) {
-		return _wordList.indexOf(word);
+		return _table[findSlot(word, hash(word))];
+	}
+
+	/**
+	 * returns the term ID of the word made of the characters without creating a
+	 * String, -1 if the word is not contained in the dictionary
+	 *
+	 * @param buffer
+	 * @param offset - index of the first character of the word
+	 * @param length - number of characters of the word
+	 * @return int index
+	 */
+	public int indexOfWord(char[] buffer, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)		// same as String.hashCode()
+			hash = 31 * hash + buffer[i];
+		int mask = _table.length - 1;
+		int slot = spread(hash) & mask;
+		while (_table[slot] != EMPTY) {
+			String term = _terms[_table[slot]];
+			if (term.length() == length && equals(term, buffer, offset))
+				return _table[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the word with the given term ID, null if there is none
+	 */
+	public String getWord(int id) {
+		return id >= 0 && id < _nextId ? _terms[id] : null;
 	}
 
+	/**
+	 *
+	 * @return a new ArrayList containing the words in the order of their term IDs
+	 */
 	public ArrayList<String> get_wordList() {
-		return _wordList;
+		ArrayList<String> wordList = new ArrayList<>(_size);
+		for (int i = 0; i < _nextId; i++) {
+			if (_terms[i] != null)
+				wordList.add(_terms[i]);
+		}
+		return wordList;
 	}
 
+	/**
+	 * replaces the content of the dictionary with the words of the parameter
+	 *
+	 * @param _wordList
+	 */
 	public void set_wordList(ArrayList<String> _wordList) {
-		this._wordList = _wordList;
+		_terms = new String[Math.max(_wordList.size(), INITIAL_CAPACITY)];
+		_table = new int[INITIAL_CAPACITY * 2];
+		Arrays.fill(_table, EMPTY);
+		_nextId = 0;
+		_size = 0;
+		_frozen = false;
+		for (String word : _wordList)
+			addWord(word);
+	}
+
+	/**
+	 * returns the slot containing the word or the free slot where it belongs
+	 */
+	private int findSlot(String word, int hash) {
+		int mask = _table.length - 1;
+		int slot = hash & mask;
+		while (_table[slot] != EMPTY && !_terms[_table[slot]].equals(word))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * rebuilds the hash table with the given capacity from the _terms field
+	 */
+	private void rehash(int capacity) {
+		_table = new int[capacity];
+		Arrays.fill(_table, EMPTY);
+		int mask = capacity - 1;
+		for (int id = 0; id < _nextId; id++) {
+			if (_terms[id] == null)
+				continue;
+			int slot = hash(_terms[id]) & mask;
+			while (_table[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			_table[slot] = id;
+		}
+	}
+
+	private static int hash(String word) {
+		return spread(word.hashCode());
+	}
+
+	/**
+	 * spreads the bits of String.hashCode() so that similar words do not cluster
+	 */
+	private static int spread(int hashCode) {
+		int h = hashCode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equals(String term, char[] buffer, int offset) {
+		for (int i = 0; i < term.length(); i++) {
+			if (term.charAt(i) != buffer[offset + i])
+				return false;
+		}
+		return true;
 	}
 }
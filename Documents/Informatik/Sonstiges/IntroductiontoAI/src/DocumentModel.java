@@ -1,10 +1,7 @@
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.StringTokenizer;
 
 
 /**
@@ -17,7 +14,7 @@ public class DocumentModel {
     /**
      * A list of separators for separating words.
      */
-    private static final String SEPARATORS = " ,:;.!?\t\r\n\"\'()*#-+[]_&%$@^_/{}<>=";
+    static final String SEPARATORS = " ,:;.!?\t\r\n\"\'()*#-+[]_&%$@^_/{}<>=";
     
     private String            _filename;
     private ArrayList<String> _wordList;
@@ -37,16 +34,18 @@ public class DocumentModel {
     }
     
     /**
-     * Constructs a document model from a text file.
+     * Constructs a document model from a text file. The file is streamed
+     * through a Tokenizer, the whole text is never held in memory.
      * 
      * @throws FileNotFoundException - if the file does not exist
      * @throws IOException - if the file cannot be read
      */
     private void readWords() throws FileNotFoundException, IOException
     {
-        String content = readFileContent (_filename);
+        ArrayList<String> words = new ArrayList<>();
         
-        _wordList = getWords (content);
+        new Tokenizer().tokenizeFile(_filename, (buffer, offset, length) -> words.add(new String(buffer, offset, length)));
+        _wordList = words;
     }
     
     /**
@@ -56,36 +55,14 @@ public class DocumentModel {
      * 
      * @return a list of words
      */
-    public ArrayList<String> getWords(String text) 
+    public static ArrayList<String> getWords(String text) 
     {
         ArrayList<String> words = new ArrayList<>();
         
-        StringTokenizer tokenizer = new StringTokenizer(text, SEPARATORS);
-        while (tokenizer.hasMoreElements()) {
-            words.add(tokenizer.nextToken().trim().toLowerCase()); 			//added toLowerCase to make sure words are comparable
-        }
+        new Tokenizer().tokenize(text, (buffer, offset, length) -> words.add(new String(buffer, offset, length)));	//words are already lower case
         return words;
     }       
 
-
-    private String readFileContent(String filename) throws FileNotFoundException, IOException
-    {
-        BufferedReader reader = new BufferedReader(new FileReader (filename));
-        String         textline;
-        StringBuilder  stringBuilder = new StringBuilder();
-        String         lineSeparator = System.getProperty("line.separator");
-    
-        try {
-            while(null != (textline = reader.readLine())) {
-                stringBuilder.append(textline);
-                stringBuilder.append(lineSeparator);
-        }
-            return stringBuilder.toString();
-        } finally {
-            reader.close();
-        }
-    }
-
 	public String get_filename() {
 		return _filename;
 	}
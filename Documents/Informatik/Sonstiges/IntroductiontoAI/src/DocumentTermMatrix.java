@@ -0,0 +1,172 @@
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * the weights of all documents as a sparse document-term matrix in CSR form outside of the heap
+ *
+ * row offsets, term IDs, weights and norms are kept in direct buffers, so the garbage
+ * collector never has to scan or move them. Row d owns the entries
+ * offsets[d] .. offsets[d + 1] - 1, the term IDs of a row are ascending.
+ * A View is a reusable flyweight pointing at one row; comparing rows allocates nothing
+ *
+ */
+public class DocumentTermMatrix {
+
+	private final int _rows;
+	private final IntBuffer _offsets;		// _rows + 1 entries
+	private final IntBuffer _termIds;
+	private final FloatBuffer _weights;
+	private final FloatBuffer _norms;		// euclidean length of every row
+
+	/**
+	 * copies the current weights of the DocumentVectorModels, afterwards they are not needed any more
+	 *
+	 * @param DVMs - one row per DocumentVectorModel in the same order
+	 */
+	public DocumentTermMatrix(List<DocumentVectorModel> DVMs) {
+		this(DVMs, null);
+	}
+
+	/**
+	 * copies the weights of DocumentVectorModels built with different dictionaries, e.g. the segments of a SegmentedIndex
+	 *
+	 * @param DVMs - one row per DocumentVectorModel in the same order
+	 * @param remaps - the term ID of the matrix at the index of the term ID of the DocumentVectorModel for every row,
+	 *                 has to keep the order of the term IDs; null to keep the term IDs
+	 */
+	public DocumentTermMatrix(List<DocumentVectorModel> DVMs, List<int[]> remaps) {
+		_rows = DVMs.size();
+		long entries = 0;
+		for (DocumentVectorModel dvm : DVMs)
+			entries += dvm.get_termIds().length;
+		if (entries > Integer.MAX_VALUE / 4)
+			throw new IllegalArgumentException(entries + " entries do not fit into a direct buffer");
+
+		_offsets = allocate(_rows + 1).asIntBuffer();
+		_termIds = allocate((int) entries).asIntBuffer();
+		_weights = allocate((int) entries).asFloatBuffer();
+		_norms = allocate(_rows).asFloatBuffer();
+		int offset = 0;
+		for (int d = 0; d < _rows; d++) {
+			DocumentVectorModel dvm = DVMs.get(d);
+			int[] termIds = dvm.get_termIds();
+			double[] weights = dvm.get_weights();
+			int[] remap = remaps == null ? null : remaps.get(d);
+			_offsets.put(d, offset);
+			double sumPow = 0;
+			for (int i = 0; i < termIds.length; i++) {
+				float weight = (float) weights[i];
+				_termIds.put(offset + i, remap == null ? termIds[i] : remap[termIds[i]]);
+				_weights.put(offset + i, weight);
+				sumPow += weight * weight;
+			}
+			_norms.put(d, (float) Math.sqrt(sumPow));
+			offset += termIds.length;
+		}
+		_offsets.put(_rows, offset);
+	}
+
+	private static ByteBuffer allocate(int numbers) {
+		return ByteBuffer.allocateDirect(4 * Math.max(numbers, 1)).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of documents
+	 */
+	public int rows() {
+		return _rows;
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of stored weights of all documents
+	 */
+	public int entries() {
+		return _offsets.get(_rows);
+	}
+
+	public float getNorm(int row) {
+		return _norms.get(row);
+	}
+
+	/**
+	 * sums up the products of the weights both rows have a word in common
+	 */
+	public double dotProduct(int row1, int row2) {
+		int i = _offsets.get(row1), end1 = _offsets.get(row1 + 1);
+		int j = _offsets.get(row2), end2 = _offsets.get(row2 + 1);
+		double sumproduct = 0;
+		while (i < end1 && j < end2) {
+			int id1 = _termIds.get(i), id2 = _termIds.get(j);
+			if (id1 < id2)
+				i++;
+			else if (id1 > id2)
+				j++;
+			else
+				sumproduct += _weights.get(i++) * _weights.get(j++);
+		}
+		return sumproduct;
+	}
+
+	/**
+	 * @return double value of the Cosine Similarity of both rows, 0 if one of them has no weights
+	 */
+	public double cosineSimilarity(int row1, int row2) {
+		float norm1 = _norms.get(row1), norm2 = _norms.get(row2);
+		if (norm1 == 0 || norm2 == 0)
+			return 0;
+		return dotProduct(row1, row2) / ((double) norm1 * norm2);
+	}
+
+	/**
+	 * @return View pointing at the row
+	 */
+	public View view(int row) {
+		View view = new View();
+		view.moveTo(row);
+		return view;
+	}
+
+	/**
+	 * flyweight view of one row, moveTo() lets one object walk over all rows
+	 */
+	public class View {
+		private int row, start, end;
+
+		public View moveTo(int row) {
+			this.row = row;
+			start = _offsets.get(row);
+			end = _offsets.get(row + 1);
+			return this;
+		}
+
+		public int row() {
+			return row;
+		}
+
+		/**
+		 *
+		 * @return int value representing the number of words with a weight
+		 */
+		public int size() {
+			return end - start;
+		}
+
+		public int termId(int i) {
+			return _termIds.get(start + i);
+		}
+
+		public float weight(int i) {
+			return _weights.get(start + i);
+		}
+
+		public float getNorm() {
+			return _norms.get(row);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * compact model of a tokenized document: the term IDs of its words with their
+ * term frequencies and optionally their positions, instead of the whole word list
+ *
+ */
+public class DocumentTerms {
+
+	private final String _docName;
+	private final int _sequenceNumber;		// position of the document in the list of files, keeps the order stable
+	private final int _length;				// number of words in the document, including the ones without term ID
+	private int[] _termIds;
+	private int[] _frequencies;				// term frequency at the same index as the term ID
+	private int[] _positionOffsets;			// positions of term i are _positions[_positionOffsets[i] .. _positionOffsets[i+1]-1], null if not stored
+	private int[] _positions;
+
+	/**
+	 * @param docName
+	 * @param sequenceNumber - position of the document in the list of files
+	 * @param length - number of words in the document
+	 * @param termIds
+	 * @param frequencies - term frequency at the same index as the term ID
+	 * @param positionOffsets - start of the positions of every term in positions plus the end, may be null
+	 * @param positions - positions of all terms one after another, may be null
+	 */
+	public DocumentTerms(String docName, int sequenceNumber, int length, int[] termIds, int[] frequencies,
+			int[] positionOffsets, int[] positions) {
+		_docName = docName;
+		_sequenceNumber = sequenceNumber;
+		_length = length;
+		_termIds = termIds;
+		_frequencies = frequencies;
+		_positionOffsets = positionOffsets;
+		_positions = positions;
+	}
+
+	/**
+	 * replaces the term IDs using the mapping returned by Dictionary.freeze(),
+	 * terms mapped to -1 are dropped and the remaining ones get sorted by their new ID
+	 *
+	 * @param remap - new term ID at the index of the old one
+	 */
+	public void remap(int[] remap) {
+		remap(termId -> remap[termId]);
+	}
+
+	/**
+	 * replaces the term IDs using the mapping, terms mapped to -1 are dropped and
+	 * the remaining ones get sorted by their new ID
+	 *
+	 * @param remap - returns the new term ID for an old one
+	 */
+	public void remap(IntUnaryOperator remap) {
+		long[] keys = new long[_termIds.length];		// new term ID in the upper, old index in the lower half
+		int count = 0;
+		for (int i = 0; i < _termIds.length; i++) {
+			int newId = remap.applyAsInt(_termIds[i]);
+			if (newId != -1)
+				keys[count++] = ((long) newId << 32) | i;
+		}
+		Arrays.sort(keys, 0, count);
+
+		int[] termIds = new int[count];
+		int[] frequencies = new int[count];
+		int[] positionOffsets = _positionOffsets == null ? null : new int[count + 1];
+		int[] positions = _positionOffsets == null ? null : new int[_positions.length];
+		for (int i = 0; i < count; i++) {
+			int old = (int) keys[i];
+			termIds[i] = (int) (keys[i] >>> 32);
+			frequencies[i] = _frequencies[old];
+			if (positions != null) {
+				int start = _positionOffsets[old];
+				int end = _positionOffsets[old + 1];
+				System.arraycopy(_positions, start, positions, positionOffsets[i], end - start);
+				positionOffsets[i + 1] = positionOffsets[i] + end - start;
+			}
+		}
+		_termIds = termIds;
+		_frequencies = frequencies;
+		_positionOffsets = positionOffsets;
+		_positions = positions == null ? null : Arrays.copyOf(positions, positionOffsets[count]);
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of different terms
+	 */
+	public int size() {
+		return _termIds.length;
+	}
+
+	public String getDocName() {
+		return _docName;
+	}
+
+	public int getSequenceNumber() {
+		return _sequenceNumber;
+	}
+
+	public int getLength() {
+		return _length;
+	}
+
+	public int[] get_termIds() {
+		return _termIds;
+	}
+
+	public int[] get_frequencies() {
+		return _frequencies;
+	}
+
+	public boolean hasPositions() {
+		return _positionOffsets != null;
+	}
+
+	public int[] get_positionOffsets() {
+		return _positionOffsets;
+	}
+
+	public int[] get_positions() {
+		return _positions;
+	}
+
+	/**
+	 * restores the order of the words from the positions
+	 *
+	 * @return int field with the term ID at every position of the document, -1 for words without term ID
+	 */
+	public int[] getTermSequence() {
+		if (_positionOffsets == null)
+			throw new IllegalStateException("the positions of " + _docName + " are not stored");
+		int[] sequence = new int[_length];
+		Arrays.fill(sequence, -1);
+		for (int i = 0; i < _termIds.length; i++) {
+			for (int p = _positionOffsets[i]; p < _positionOffsets[i + 1]; p++)
+				sequence[_positions[p]] = _termIds[i];
+		}
+		return sequence;
+	}
+}
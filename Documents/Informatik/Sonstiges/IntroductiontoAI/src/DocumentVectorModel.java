@@ -1,93 +1,351 @@
 
+import java.util.Arrays;
+
 /**
- * generates a vector as a double field out of a DocumentModel with calculated weights for every word
+ * generates a sparse vector out of a DocumentModel with calculated weights for every word of the document
+ * only the words occurring in the document are stored: their term IDs in ascending order and the weights at the same index
+ * the weights depend on the whole index, they are recomputed lazily from the term frequencies once documents were added or deleted
+ * the weights are computed by a WeightingScheme from the term frequencies and the idf table shared through the index
+ * the weights are stored as doubles, as floats or quantized to bytes with one scale per vector (see Storage),
+ * the similarity is computed directly on the stored form
  * @author marcogoette
  *
  */
 public class DocumentVectorModel {
-    
-    private double[] _weights;				// contains the calculated weights at the same index the words have in the dictionary
+
+    /**
+     * precision of the stored weights: DOUBLE, FLOAT (half the memory) or INT8 (an eighth, weight = byte * scale)
+     */
+    public enum Storage { DOUBLE, FLOAT, INT8 }
+
+    private int[] _termIds;					// term IDs of the words in the document in ascending order
+    private double[] _weights;				// contains the calculated weights at the same index as the term ID in _termIds, null unless DOUBLE
+    private float[] _floatWeights;			// the weights in FLOAT storage, null otherwise
+    private byte[] _quantizedWeights;		// the weights divided by _scale in INT8 storage, null otherwise
+    private double _scale;					// weight of the byte value 1 in INT8 storage
+    private Storage _storage = Storage.DOUBLE;
+    private double _norm;					// euclidean length of the vector, cached for the cosine similarity
+    private int[] _frequencyTermIds;		// term IDs of all words of the document in ascending order
+    private int[] _frequencies;				// term frequency at the same index as the term ID in _frequencyTermIds
+    private int _generation;				// generation of the index the weights were computed for
     private DocumentModel documentModel;
     private InvertedIndex invertedIndex;
-    private int numberOfDocuments;			// Number of Documents in the file
+    private WeightingScheme scheme;
     /**
-     * inizializes the needed variables      
+     * inizializes the needed variables
      * @param documentModel
      * @param invertedIndex
-     * @param numberOfDocuments
+     * @param numberOfDocuments - not used any more, the number of documents is taken from the index
      */
     public DocumentVectorModel (DocumentModel documentModel, InvertedIndex invertedIndex, int numberOfDocuments) {
-    	
+
     	this.documentModel = documentModel;
     	this.invertedIndex = invertedIndex;
-    	this.numberOfDocuments = numberOfDocuments;
-    	_weights = new double[invertedIndex.getDictionary().length()];
-    	
+    	scheme = WeightingScheme.LOG_TF_IDF;
+
     	computeWordFrequency();				// computes the frequency for every word
-        
+
     	computeWeights();					// computes the weights for every word
     }
     /**
-     * generates an early version of the vector containing for every word in how many of the documents of the file it occurs
-     * for every word in the document the weight increases at the according index if the word is part of the dictionary
+     * inizializes the vector from the counted words of a document with log-tf idf weights
+     * @param documentTerms - term IDs in ascending order with their frequencies
+     * @param invertedIndex
+     * @param numberOfDocuments - not used any more, the number of documents is taken from the index
+     */
+    public DocumentVectorModel (DocumentTerms documentTerms, InvertedIndex invertedIndex, int numberOfDocuments) {
+    	this(documentTerms, invertedIndex, WeightingScheme.LOG_TF_IDF);
+    }
+    /**
+     * inizializes the vector from the counted words of a document
+     * @param documentTerms - term IDs in ascending order with their frequencies
+     * @param invertedIndex
+     * @param scheme - computes the weights
+     */
+    public DocumentVectorModel (DocumentTerms documentTerms, InvertedIndex invertedIndex, WeightingScheme scheme) {
+
+    	this.invertedIndex = invertedIndex;
+    	this.scheme = scheme;
+    	_frequencyTermIds = documentTerms.get_termIds().clone();
+    	_frequencies = documentTerms.get_frequencies().clone();
+
+    	computeWeights();					// computes the weights for every word
+    }
+    /**
+     * counts the term frequency of every word of the document which is part of the dictionary
+     * the term IDs get sorted so equal words are counted in one run
      */
     public void computeWordFrequency() {
-    	int index;
+    	int[] ids = new int[documentModel.get_wordList().size()];
+    	int count = 0;
         for (String word : documentModel.get_wordList()) {
-        	index = invertedIndex.getDictionary().indexOfWord(word);
+        	int index = invertedIndex.getDictionary().indexOfWord(word);
         	if (index != -1)
-            	_weights[index]++;
+        		ids[count++] = index;
+        }
+        Arrays.sort(ids, 0, count);
+
+        _frequencyTermIds = new int[count];
+        _frequencies = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+        	if (size > 0 && _frequencyTermIds[size - 1] == ids[i])
+        		_frequencies[size - 1]++;
+        	else {
+        		_frequencyTermIds[size] = ids[i];
+        		_frequencies[size++] = 1;
+        	}
         }
+        _frequencyTermIds = Arrays.copyOf(_frequencyTermIds, size);
+        _frequencies = Arrays.copyOf(_frequencies, size);
     }
     /**
-     * uses the vector from before and computes the actual weights for every word
+     * uses the term frequencies and computes the actual weights for every word of the document
+     * only the words of the document are visited, their idf is looked up in the shared IdfTable of the scheme
      * to normalize all values (should be between 0 - 1) they get devided by the maximum weight at the end
-     * the if-clauses are essential to prevent the devision by zero
+     * words with weight 0 (no idf) are dropped from the vector
      */
     public void computeWeights() {
+    	IdfTable table = invertedIndex.getIdfTable(scheme);
+    	_generation = table.getGeneration();
+    	int length = 0, maxFrequency = 0;
+    	for (int frequency : _frequencies) {
+    		length += frequency;
+    		maxFrequency = Math.max(maxFrequency, frequency);
+    	}
+    	int[] termIds = new int[_frequencyTermIds.length];
+    	double[] weights = new double[_frequencyTermIds.length];
     	double max = 0;
-        for (int i = 0; i < invertedIndex.getDictionary().get_wordList().size(); i++) {
-        	int frequency = invertedIndex.getOccurence()[i];
-        	if (frequency == 0.0 || frequency == numberOfDocuments)
-        		_weights[i] = 0;
-        	else if (_weights[i] == 0.0)
-        		_weights[i] = 0;
-        	else
-        		_weights[i] = ((1 + Math.log10(_weights[i])) * Math.log10((numberOfDocuments)/frequency));
-        	if (_weights[i] > max && !Double.isInfinite(_weights[i]))
-        		max = _weights[i];
+    	int size = 0;
+        for (int i = 0; i < _frequencyTermIds.length; i++) {
+        	double idf = table.idf(_frequencyTermIds[i]);
+        	if (idf == 0.0)
+        		continue;
+        	double weight = scheme.tf(_frequencies[i], maxFrequency, length, table.getAverageLength()) * idf;
+        	if (weight == 0.0 || Double.isInfinite(weight))
+        		continue;
+        	termIds[size] = _frequencyTermIds[i];
+        	weights[size++] = weight;
+        	if (weight > max)
+        		max = weight;
         }
-        
+        _termIds = Arrays.copyOf(termIds, size);
+        _weights = Arrays.copyOf(weights, size);
+
         for (int i = 0; i < _weights.length; i++)
         	_weights[i] /= max;
+        store(_weights);
+    }
+    /**
+     * keeps the weights in the form given by _storage and computes the norm from the stored values
+     * so the similarity of a vector with itself stays 1
+     */
+    private void store(double[] weights) {
+    	_weights = null;
+    	_floatWeights = null;
+    	_quantizedWeights = null;
+    	double sumPow = 0;
+    	switch (_storage) {
+    	case DOUBLE:
+    		_weights = weights;
+    		sumPow = dotProduct(weights, weights);
+    		break;
+    	case FLOAT:
+    		_floatWeights = new float[weights.length];
+    		for (int i = 0; i < weights.length; i++) {
+    			_floatWeights[i] = (float) weights[i];
+    			sumPow += _floatWeights[i] * _floatWeights[i];
+    		}
+    		break;
+    	case INT8:
+    		double max = 0;
+    		for (double weight : weights)
+    			max = Math.max(max, Math.abs(weight));
+    		_scale = max == 0.0 ? 1 : max / 127;
+    		_quantizedWeights = new byte[weights.length];
+    		long sum = 0;
+    		for (int i = 0; i < weights.length; i++) {
+    			_quantizedWeights[i] = (byte) Math.round(weights[i] / _scale);
+    			sum += _quantizedWeights[i] * _quantizedWeights[i];
+    		}
+    		sumPow = sum * _scale * _scale;
+    		break;
+    	}
+    	_norm = Math.sqrt(sumPow);
+    }
+    /**
+     * recomputes the weights if documents were added to or deleted from the index since they were computed,
+     * synchronized so two threads comparing the same vector do not compute its weights at once. Readers
+     * running in parallel use storedDotProduct on weights computed before the work is split
+     */
+    private synchronized void ensureWeights() {
+    	if (_generation != invertedIndex.getGeneration())
+    		computeWeights();
     }
     /**
      * method to calculate the Cosine Similarity between two DocumentVectorModels
-     * the whole formula is divided in separate parts
+     * the dot product is computed as a merge over the sorted term IDs of both vectors, the norms are cached
      * @param d1
      * @param d2
-     * @return double value of the Cosine SImilarity
+     * @return double value of the Cosine SImilarity, 0 if one of the vectors has no weights
      */
     public static double cosineSimilarity (DocumentVectorModel d1, DocumentVectorModel d2) {
-        // implement this
+    	d1.ensureWeights();
+    	d2.ensureWeights();
+    	if (d1._norm == 0.0 || d2._norm == 0.0)
+    		return 0;
+    	return dotProduct(d1, d2)/(d1._norm*d2._norm);
+    }
+    /**
+     * sums up the products of the weights both vectors have a word in common
+     * @param d1
+     * @param d2
+     * @return double value of the dot product
+     */
+    public static double dotProduct (DocumentVectorModel d1, DocumentVectorModel d2) {
+    	d1.ensureWeights();
+    	d2.ensureWeights();
+    	return storedDotProduct(d1, d2);
+    }
+    /**
+     * the dot product of the weights as they are stored, without recomputing them for a newer generation
+     * of the index, so the vectors are only read. The weights have to be computed before, e.g. by getNorm
+     * @param d1
+     * @param d2
+     * @return double value of the dot product
+     */
+    static double storedDotProduct (DocumentVectorModel d1, DocumentVectorModel d2) {
+    	int[] ids1 = d1._termIds, ids2 = d2._termIds;
+    	if (d1._storage == Storage.INT8 && d2._storage == Storage.INT8) {
+    		byte[] w1 = d1._quantizedWeights, w2 = d2._quantizedWeights;
+    		long sumproduct = 0;				// exact in integers, scaled once at the end
+    		int i = 0, j = 0;
+    		while (i < ids1.length && j < ids2.length) {
+    			if (ids1[i] < ids2[j])
+    				i++;
+    			else if (ids1[i] > ids2[j])
+    				j++;
+    			else
+    				sumproduct += w1[i++] * w2[j++];
+    		}
+    		return sumproduct * d1._scale * d2._scale;
+    	}
+    	if (d1._storage == Storage.FLOAT && d2._storage == Storage.FLOAT) {
+    		float[] w1 = d1._floatWeights, w2 = d2._floatWeights;
+    		double sumproduct = 0;
+    		int i = 0, j = 0;
+    		while (i < ids1.length && j < ids2.length) {
+    			if (ids1[i] < ids2[j])
+    				i++;
+    			else if (ids1[i] > ids2[j])
+    				j++;
+    			else
+    				sumproduct += w1[i++] * w2[j++];
+    		}
+    		return sumproduct;
+    	}
+    	if (d1._storage == Storage.DOUBLE && d2._storage == Storage.DOUBLE)
+    		return dotProduct(d1._weights, d2._weights, ids1, ids2);
+    	double sumproduct = 0;						// different storages, slow path
+    	int i = 0, j = 0;
+    	while (i < ids1.length && j < ids2.length) {
+    		if (ids1[i] < ids2[j])
+    			i++;
+    		else if (ids1[i] > ids2[j])
+    			j++;
+    		else
+    			sumproduct += d1.weight(i++) * d2.weight(j++);
+    	}
+    	return sumproduct;
+    }
+
+    private static double dotProduct(double[] w1, double[] w2, int[] ids1, int[] ids2) {
     	double sumproduct = 0;
-    	double sumPowD1 = 0, sumPowD2 = 0;
-    	double v1, v2;
-    	for (int i = 0; i < d1.get_weights().length; i++) {
-    		v1 = d1.get_weights()[i];
-    		v2 = d2.get_weights()[i];
-    		sumproduct += (v1 * v2);
-    		sumPowD1 += (v1 * v1);
-    		sumPowD2 += (v2 * v2);
+    	int i = 0, j = 0;
+    	while (i < ids1.length && j < ids2.length) {
+    		if (ids1[i] < ids2[j])
+    			i++;
+    		else if (ids1[i] > ids2[j])
+    			j++;
+    		else
+    			sumproduct += w1[i++] * w2[j++];
     	}
-        return sumproduct/(Math.sqrt(sumPowD1)*Math.sqrt(sumPowD2));
+    	return sumproduct;
     }
 
+    private static double dotProduct(double[] w1, double[] w2) {
+    	double sumproduct = 0;
+    	for (int i = 0; i < w1.length; i++)
+    		sumproduct += w1[i] * w2[i];
+    	return sumproduct;
+    }
+
+    /**
+     * @return double value of the stored weight at index i
+     */
+    private double weight(int i) {
+    	switch (_storage) {
+    	case FLOAT:	return _floatWeights[i];
+    	case INT8:	return _quantizedWeights[i] * _scale;
+    	default:	return _weights[i];
+    	}
+    }
+
+	public int[] get_termIds() {
+		ensureWeights();
+		return _termIds;
+	}
+
+	/**
+	 * @return double field with the weights, a decoded copy unless the storage is DOUBLE
+	 */
 	public double[] get_weights() {
-		return _weights;
+		ensureWeights();
+		if (_storage == Storage.DOUBLE)
+			return _weights;
+		double[] weights = new double[_termIds.length];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = weight(i);
+		return weights;
 	}
 
+	/**
+	 * replaces the weights, the array has to be parallel to get_termIds()
+	 * @param _weights
+	 */
 	public void set_weights(double[] _weights) {
-		this._weights = _weights;
+		store(_weights);
+	}
+
+	public WeightingScheme getWeightingScheme() {
+		return scheme;
+	}
+
+	/**
+	 * changes the weighting scheme, the weights are computed again
+	 * @param scheme
+	 */
+	public void setWeightingScheme(WeightingScheme scheme) {
+		this.scheme = scheme;
+		computeWeights();
+	}
+
+	public Storage getStorage() {
+		return _storage;
+	}
+
+	/**
+	 * changes the precision of the stored weights, they are computed again from the term frequencies
+	 * so a vector never gets quantized twice
+	 * @param storage
+	 */
+	public void setStorage(Storage storage) {
+		_storage = storage;
+		computeWeights();
+	}
+
+	public double getNorm() {
+		ensureWeights();
+		return _norm;
 	}
 }
@@ -1,9 +1,13 @@
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.text.DecimalFormat;
 
 /**
@@ -19,14 +23,44 @@ public class IRTester {
     private final String _sourceDir;
     private String pathStopwords = "stopwords.txt"; //stopwords path
     private static boolean debug = false;		//to process the debug command
+    private static boolean printMetrics = false;	//print the metrics at the end ("-metrics" command)
+    private static MetricsRegistry metrics = MetricsRegistry.getDefault();	//timings and counters of the stages
+    private String query;						//free-text query given with the "-query" command, null to compute the matrix
+    private int topK = 10;						//number of documents returned for the query
+    private String queriesFile;					//file with one query per line answered through the SearchCache ("-queries" command)
+    private String buildIndexFile;				//index file written after building the index ("-build" command)
+    private String openIndexFile;				//index file opened instead of reading the source directory ("-open" command)
+    private boolean updateIndex;				//update the opened index with the changes in the source directory ("-update" command)
+    private double duplicateThreshold = -1;		//minimum similarity of near-duplicates ("-duplicates" command), -1 to compute the matrix
+    private int bands = 20;						//LSH bands, more bands find more near-duplicates
+    private int rows = 5;						//MinHash values per band, more rows compare fewer pairs
+    private int shingleSize = 3;				//number of consecutive words forming a shingle
+    private DocumentVectorModel.Storage storage = DocumentVectorModel.Storage.DOUBLE;	//precision of the weights ("-weights" command)
+    private boolean offHeap;					//compute the matrix from an off-heap DocumentTermMatrix ("-offheap" command)
+    private int minDocumentFrequency = 1;		//words in fewer documents are removed ("-minDf" command)
+    private double maxDocumentRatio = 1;		//words in a larger share of the documents are removed ("-maxDf" command)
+    private int topTerms;						//only the words with the highest document frequency are kept ("-topTerms" command), 0 for all
+    private WeightingScheme scheme = WeightingScheme.LOG_TF_IDF;	//weights of the Document Vector Models, the queries and the document norms ("-weighting" command)
+    private String outputFile;					//file receiving the similar pairs instead of printing the matrix ("-output" command)
+    private SimilarityWriter.Format outputFormat = SimilarityWriter.Format.TSV;	//"-format" command
+    private double outputThreshold;				//minimum similarity of a written pair ("-threshold" command)
+    private int neighbours;						//nearest neighbours written per document ("-neighbours" command), 0 for all pairs above the threshold
+    private int segments;						//number of segments built concurrently ("-segments" command), 0 for one index
+    private boolean join;						//only compare documents sharing a word through a SimilarityJoin ("-join" command)
+    private boolean compress;					//answer queries and phrases from block-compressed postings ("-compress" command)
+    private String phrase;						//words searched one after another ("-phrase" command)
+    private int window;							//search the words of the phrase within this many words instead ("-near" command), 0 for the exact phrase
+    private boolean positions;					//keep the positions of the words in the index ("-positions" command), implied by "-phrase"
+    private int reducedDimension;				//compare random projections of this dimension instead of the tf-idf vectors ("-reduce" command), 0 for none
+    private static final int PROJECTION_NON_ZEROS = 8;	//dimensions every word is projected to
     
-    private ArrayList<DocumentModel>       _documentModels;
+    private ArrayList<DocumentTerms>       _documentTerms;		//counted words of every document, replaces the word lists
     private ArrayList<DocumentVectorModel> _documentVectorModels;
     private Dictionary                     _dictionary;
     private InvertedIndex                  _invertedIndex;
     private ArrayList<String>              docNames;			//list of document names as listed in the file
     private int                            numberOfDocuments;	//number of documents in the file
-    private Object[][] 					   matrix;				//necessary for printing the calculations at the end
+    private SimilarityMatrix 			   matrix;				//necessary for printing the calculations at the end
     private static DecimalFormat df = new DecimalFormat("0.000");	//to print the results in the right format
     
     /**
@@ -37,7 +71,7 @@ public class IRTester {
     public IRTester(String sourceDir) {
         _sourceDir = sourceDir;
         
-        _documentModels = new ArrayList<>();
+        _documentTerms = new ArrayList<>();
         _documentVectorModels = new ArrayList<>();
         _dictionary = new Dictionary();
         docNames = new ArrayList<>();
@@ -49,31 +83,119 @@ public class IRTester {
      */
     public void run()
     {
+    	if (openIndexFile != null) {
+    		runOnStoredIndex();
+    		return;
+    	}
     	System.out.println(pathStopwords);
         // get list of file names
     	System.out.println("Getting list of file names");
         ArrayList<String> filenames = getTextFileList ();
+        if (segments > 0) {
+        	runSegmented(filenames);
+        	return;
+        }
         
         // read documents and create a list of documents
         System.out.println("---------------------------------------------------------------------------");
     	System.out.println("Reading documents and create a list of documents");
+        MetricsRegistry.Stage stage = metrics.startStage("read");
         readDocuments (filenames);
+        stage.stop();
         
         // process documents to transform text data into a useful form
         System.out.println("---------------------------------------------------------------------------");
     	System.out.println("Building dictionary");
+    	stage = metrics.startStage("dictionary");
     	buildDictionary();
+    	stage.stop();
     	
     	// compute Document Vector Models
         System.out.println("---------------------------------------------------------------------------");
     	System.out.println("Computing Document Vector Models");
     	buildDocumentVectorModels();
 
+    	// write the index for later runs if the "-build" command was given
+    	if (buildIndexFile != null) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Writing index to " + buildIndexFile);
+        	long start = System.nanoTime();
+        	try {
+        		IndexStore.write(_invertedIndex, buildIndexFile);
+        		System.out.println("Index written in " + df.format((System.nanoTime() - start) / 1e6) + " ms");
+        	} catch (IOException e) {
+        		System.err.println("unable to write index " + buildIndexFile + ": " + e.getMessage());
+        	}
+    	}
+
+    	// answer the query instead of computing the matrix if one was given
+    	if (compress && (query != null || queriesFile != null || phrase != null))
+    		compressPostings();
+    	if (query != null) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Searching for \"" + query + "\"...");
+    		printQueryResult(new QueryEngine(_invertedIndex, scheme).search(query, topK));
+    		return;
+    	}
+    	if (queriesFile != null) {
+    		runQueries(null);
+    		return;
+    	}
+    	if (phrase != null) {
+    		searchPhrase();
+    		return;
+    	}
+        
+    	// only look for near-duplicates instead of computing the whole matrix if the "-duplicates" command was given
+    	if (duplicateThreshold >= 0) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Searching near-duplicates...");
+        	printNearDuplicates();
+        	return;
+    	}
+        
+    	DocumentTermMatrix documents = null;
+    	if (offHeap || join || reducedDimension > 0) {							//move the weights out of the heap first
+    		documents = new DocumentTermMatrix(_documentVectorModels);
+    		_documentVectorModels.clear();
+    		_documentTerms.clear();
+    		System.out.println("Document-term matrix moved off-heap: " + documents.entries() + " weights");
+    	}
+
+    	// compare dense projections of the documents instead of the tf-idf vectors if the "-reduce" command was given
+    	if (reducedDimension > 0) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Reducing the documents to " + reducedDimension + " dimensions...");
+    		runReduced(documents);
+    		return;
+    	}
+
+    	// write the similar pairs while they are computed instead of building the matrix if the "-output" command was given
+    	if (outputFile != null) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Writing similar documents to " + outputFile + "...");
+        	if (documents == null) {
+        		for (DocumentVectorModel dvm : _documentVectorModels)	//the pairs are computed with the precision of the "-weights" command
+        			dvm.setStorage(storage);
+        	}
+        	writeSimilarities(documents);
+        	return;
+    	}
         
         // build document-document matrix
         System.out.println("---------------------------------------------------------------------------");
     	System.out.println("Calculating Matrix...");
-    	matrix = computeDocDocMatrix(_documentVectorModels);
+    	if (offHeap || join)
+    		matrix = computeDocDocMatrix(documents);
+    	else if (storage != DocumentVectorModel.Storage.DOUBLE) {	//compare the ranking with the double weights
+    		SimilarityMatrix baseline = computeDocDocMatrix(_documentVectorModels);
+    		for (DocumentVectorModel dvm : _documentVectorModels)
+    			dvm.setStorage(storage);
+    		matrix = computeDocDocMatrix(_documentVectorModels);
+    		System.out.println("Ranking deviation of " + storage + " weights: " + new RankingDeviation(baseline, matrix, topK));
+    	}
+    	else
+    		matrix = computeDocDocMatrix(_documentVectorModels);
         
         // print document-document matrix
         System.out.println("---------------------------------------------------------------------------");
@@ -84,23 +206,261 @@ public class IRTester {
     	if (debug == true) {
     		 System.out.println("---------------------------------------------------------------------------");
     		 System.out.println("Printing Inverted Index...");
+    		 _invertedIndex.printInvertedIndex();
     	}
-    	_invertedIndex.printInvertedIndex();
     }
     
+    /**
+     * usage: IRTester &lt;sourceDir&gt; [-debug] [-query &lt;text&gt;] [-k &lt;n&gt;] [-build &lt;indexFile&gt;]
+     *                 [-duplicates &lt;threshold&gt; [-bands &lt;n&gt;] [-rows &lt;n&gt;] [-shingle &lt;words&gt;]]
+     *                 [-weights double|float|int8] [-offheap] [-minDf &lt;n&gt;] [-maxDf &lt;ratio&gt;] [-topTerms &lt;n&gt;]
+     *                 [-weighting logtfidf|augmented|bm25|pivoted] [-queries &lt;file&gt;] [-metrics]
+     *                 [-output &lt;file&gt; [-format tsv|binary] [-threshold &lt;similarity&gt;] [-neighbours &lt;k&gt;]]
+     *                 [-segments &lt;n&gt;] [-join] [-compress] [-positions] [-phrase &lt;text&gt; [-near &lt;words&gt;]]
+     *                 [-reduce &lt;dimension&gt;]
+     *    -weights int8 only applies to the Document Vector Models, the off-heap document-term matrix
+     *    used by -offheap, -join, -reduce and -segments always keeps float weights
+     *    or: IRTester [&lt;sourceDir&gt; -update] -open &lt;indexFile&gt; [-debug] [-query &lt;text&gt;] [-k &lt;n&gt;] [-compress]
+     *                 [-phrase &lt;text&gt; [-near &lt;words&gt;]]
+     */
     public static void main(String args[]) {
     	
-    	try {								//look for the "debug" command
-			if (args[1].equals("-debug"))
-				debug = true;
-    	} catch (ArrayIndexOutOfBoundsException e) {
-    		System.out.println("debug = " + debug);
+    	String sourceDir = null, query = null, buildIndexFile = null, openIndexFile = null, queriesFile = null;
+    	int topK = 10;
+    	boolean updateIndex = false;
+    	double duplicateThreshold = -1;
+    	int bands = 20, rows = 5, shingleSize = 3;
+    	DocumentVectorModel.Storage storage = DocumentVectorModel.Storage.DOUBLE;
+    	boolean offHeap = false;
+    	int minDocumentFrequency = 1, topTerms = 0;
+    	double maxDocumentRatio = 1;
+    	WeightingScheme scheme = WeightingScheme.LOG_TF_IDF;
+    	String outputFile = null;
+    	SimilarityWriter.Format outputFormat = SimilarityWriter.Format.TSV;
+    	double outputThreshold = 0;
+    	int neighbours = 0, segments = 0;
+    	boolean join = false, compress = false, positions = false;
+    	String phrase = null;
+    	int window = 0, reducedDimension = 0;
+    	for (int i = 0; i < args.length; i++) {		//look for the "debug", "query", "k", "build", "open" and near-duplicate commands
+    		if (args[i].equals("-debug"))
+    			debug = true;
+    		else if (args[i].equals("-metrics"))
+    			printMetrics = true;
+    		else if (args[i].equals("-query") && i + 1 < args.length)
+    			query = args[++i];
+    		else if (args[i].equals("-queries") && i + 1 < args.length)
+    			queriesFile = args[++i];
+    		else if (args[i].equals("-k") && i + 1 < args.length)
+    			topK = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-build") && i + 1 < args.length)
+    			buildIndexFile = args[++i];
+    		else if (args[i].equals("-open") && i + 1 < args.length)
+    			openIndexFile = args[++i];
+    		else if (args[i].equals("-update"))
+    			updateIndex = true;
+    		else if (args[i].equals("-duplicates") && i + 1 < args.length)
+    			duplicateThreshold = Double.parseDouble(args[++i]);
+    		else if (args[i].equals("-bands") && i + 1 < args.length)
+    			bands = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-rows") && i + 1 < args.length)
+    			rows = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-shingle") && i + 1 < args.length)
+    			shingleSize = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-weights") && i + 1 < args.length)
+    			storage = DocumentVectorModel.Storage.valueOf(args[++i].toUpperCase());
+    		else if (args[i].equals("-offheap"))
+    			offHeap = true;
+    		else if (args[i].equals("-minDf") && i + 1 < args.length)
+    			minDocumentFrequency = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-maxDf") && i + 1 < args.length)
+    			maxDocumentRatio = Double.parseDouble(args[++i]);
+    		else if (args[i].equals("-topTerms") && i + 1 < args.length)
+    			topTerms = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-weighting") && i + 1 < args.length)
+    			scheme = WeightingScheme.forName(args[++i]);
+    		else if (args[i].equals("-output") && i + 1 < args.length)
+    			outputFile = args[++i];
+    		else if (args[i].equals("-format") && i + 1 < args.length)
+    			outputFormat = SimilarityWriter.Format.valueOf(args[++i].toUpperCase());
+    		else if (args[i].equals("-threshold") && i + 1 < args.length)
+    			outputThreshold = Double.parseDouble(args[++i]);
+    		else if (args[i].equals("-neighbours") && i + 1 < args.length)
+    			neighbours = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-segments") && i + 1 < args.length)
+    			segments = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-join"))
+    			join = true;
+    		else if (args[i].equals("-compress"))
+    			compress = true;
+    		else if (args[i].equals("-phrase") && i + 1 < args.length)
+    			phrase = args[++i];
+    		else if (args[i].equals("-near") && i + 1 < args.length)
+    			window = Integer.parseInt(args[++i]);
+    		else if (args[i].equals("-positions"))
+    			positions = true;
+    		else if (args[i].equals("-reduce") && i + 1 < args.length)
+    			reducedDimension = Integer.parseInt(args[++i]);
+    		else if (sourceDir == null)
+    			sourceDir = args[i];
+    	}
+    	if (storage == DocumentVectorModel.Storage.INT8 && (offHeap || join || reducedDimension > 0 || segments > 0)) {
+    		System.err.println("-weights int8 cannot be combined with -offheap, -join, -reduce or -segments, "
+    				+ "the off-heap document-term matrix keeps float weights");
+    		return;
     	}
+    	System.out.println("debug = " + debug);
+    	
+    	IRTester tester = new IRTester(sourceDir);
+    	tester.query = query;
+    	tester.topK = topK;
+    	tester.queriesFile = queriesFile;
+    	tester.buildIndexFile = buildIndexFile;
+    	tester.openIndexFile = openIndexFile;
+    	tester.updateIndex = updateIndex;
+    	tester.duplicateThreshold = duplicateThreshold;
+    	tester.bands = bands;
+    	tester.rows = rows;
+    	tester.shingleSize = shingleSize;
+    	tester.storage = storage;
+    	tester.offHeap = offHeap;
+    	tester.minDocumentFrequency = minDocumentFrequency;
+    	tester.maxDocumentRatio = maxDocumentRatio;
+    	tester.topTerms = topTerms;
+    	tester.scheme = scheme;
+    	tester.outputFile = outputFile;
+    	tester.outputFormat = outputFormat;
+    	tester.outputThreshold = outputThreshold;
+    	tester.neighbours = neighbours;
+    	tester.segments = segments;
+    	tester.join = join;
+    	tester.compress = compress;
+    	tester.phrase = phrase;
+    	tester.window = window;
+    	tester.positions = positions || phrase != null;
+    	tester.reducedDimension = reducedDimension;
 			
-        new IRTester(args[0]).run();		//run the program
+        metrics.registerMBean();			//the metrics can be watched with jconsole while the program runs
+        tester.run();						//run the program
+        if (printMetrics || debug) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Metrics");
+        	System.out.print(metrics.dump());
+        }
         
     }
     
+    /**
+     * opens an index written with the "-build" command instead of reading the documents
+     * and answers the query, or prints the inverted index in debug mode
+     * with the "-update" command only new, modified and removed documents of the source directory
+     * are processed and the index file is written again
+     */
+    private void runOnStoredIndex()
+    {
+    	long start = System.nanoTime();
+    	try {
+    		_invertedIndex = IndexStore.open(openIndexFile);
+    	} catch (IOException e) {
+    		System.err.println("unable to open index " + openIndexFile + ": " + e.getMessage());
+    		return;
+    	}
+    	System.out.println("Index opened: " + _invertedIndex.getNumberOfDocuments() + " documents, "
+    			+ _invertedIndex.getDictionary().length() + " words in " + df.format((System.nanoTime() - start) / 1e6) + " ms");
+    	
+    	if (updateIndex && _sourceDir != null) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Updating index from " + _sourceDir);
+        	start = System.nanoTime();
+        	IndexUpdater updater = new IndexUpdater(_sourceDir, _invertedIndex, readStopwords(), new File(openIndexFile).lastModified());
+        	if (updater.update()) {
+        		try {
+        			IndexStore.write(_invertedIndex, openIndexFile);
+        		} catch (IOException e) {
+        			System.err.println("unable to write index " + openIndexFile + ": " + e.getMessage());
+        		}
+        	}
+        	System.out.println(updater.getAdded() + " added, " + updater.getModified() + " modified, " + updater.getDeleted()
+        			+ " deleted in " + df.format((System.nanoTime() - start) / 1e6) + " ms");
+    	}
+    	
+    	if (compress && (query != null || queriesFile != null || phrase != null))
+    		compressPostings();
+    	if (query != null) {
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Searching for \"" + query + "\"...");
+    		printQueryResult(new QueryEngine(_invertedIndex, scheme).search(query, topK));
+    	}
+    	if (queriesFile != null)
+    		runQueries(null);
+    	if (phrase != null)
+    		searchPhrase();
+    	if (debug == true) {
+    		 System.out.println("---------------------------------------------------------------------------");
+    		 System.out.println("Printing Inverted Index...");
+    		 _invertedIndex.printInvertedIndex();
+    	}
+    }
+    
+    /**
+     * builds a SegmentedIndex with the "-segments" command instead of one index and answers the query
+     * or computes the similarities over the segments; the vocabulary is not pruned and no near-duplicates are searched
+     * @param filenames - the list of filenames of text files
+     */
+    private void runSegmented(ArrayList<String> filenames)
+    {
+        System.out.println("---------------------------------------------------------------------------");
+    	System.out.println("Building " + segments + " segments");
+    	long start = System.nanoTime();
+    	MetricsRegistry.Stage stage = metrics.startStage("index");
+    	SegmentedIndex index = new SegmentedIndex(filenames, segments, new StopwordFilter(readStopwords()), false, scheme);
+    	stage.stop();
+    	docNames = index.getDocNames();
+    	numberOfDocuments = index.getNumberOfDocuments();
+    	System.out.println("Segments complete: " + throughput(start, numberOfDocuments) + "; Dictionary length: "
+    			+ index.getDictionary().length());
+    	try {
+    		if (buildIndexFile != null) {
+                System.out.println("---------------------------------------------------------------------------");
+            	System.out.println("Merging segments and writing index to " + buildIndexFile);
+            	try {
+            		IndexStore.write(index.merge(), buildIndexFile);
+            	} catch (IOException e) {
+            		System.err.println("unable to write index " + buildIndexFile + ": " + e.getMessage());
+            	}
+    		}
+    		if (query != null) {
+                System.out.println("---------------------------------------------------------------------------");
+            	System.out.println("Searching for \"" + query + "\" in " + segments + " segments...");
+        		printQueryResult(index.search(query, topK));
+        		return;
+    		}
+    		if (queriesFile != null) {
+    			runQueries(index);
+    			return;
+    		}
+    		start = System.nanoTime();
+    		stage = metrics.startStage("weight");
+    		DocumentTermMatrix documents = index.toDocumentTermMatrix(scheme);
+    		stage.stop();
+    		System.out.println("Document-term matrix complete (" + scheme + "): " + throughput(start, numberOfDocuments));
+    		if (outputFile != null) {
+                System.out.println("---------------------------------------------------------------------------");
+            	System.out.println("Writing similar documents to " + outputFile + "...");
+            	writeSimilarities(documents);
+            	return;
+    		}
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Calculating Matrix...");
+        	matrix = computeDocDocMatrix(documents);
+            System.out.println("---------------------------------------------------------------------------");
+        	System.out.println("Printing Matrix...");
+        	printMatrix(matrix);
+    	} finally {
+    		index.shutdown();
+    	}
+    }
+    
     /**
      * Returns a list of file names with extension .txt.
      * 
@@ -127,102 +487,301 @@ public class IRTester {
         for (File file : fileList)
         {
             filenames.add(_sourceDir + File.separator + file.getName());
-            docNames.add(file.getName());								// added to get the Text-Document Names as Strings in an ArrayList
         }
-        numberOfDocuments = docNames.size();							// to memorize the number of Documents in the file
         return filenames;
     }
     
     
 
     /**
-     * Reads documents given a list of files. An error message is printed to 
-     * standard error for documents not successfully read.
+     * Reads documents given a list of files through the IngestionPipeline, which
+     * tokenizes them concurrently, drops the stopwords and adds every other unique word to the dictionary.
+     * An error message is printed to standard error for documents not successfully read.
      * 
      * @param filenames - the list of filenames of text files
      * 
      */
     private void readDocuments(ArrayList<String> filenames) {
-        for (int i=0; i < filenames.size(); i++) {
-            try {
-                DocumentModel documentModel = new DocumentModel(filenames.get(i));
-                _documentModels.add(documentModel);
-            }
-            catch (Exception xcp) {
-                System.err.println ("unable to read file " + filenames.get(i));
-            }
-        }
+        IngestionPipeline pipeline = duplicateThreshold >= 0 || positions	// the shingles and phrases need the positions of the words
+        		? new IngestionPipeline(_dictionary, Runtime.getRuntime().availableProcessors(), true)
+        		: new IngestionPipeline(_dictionary);
+        pipeline.setStopwords(new StopwordFilter(readStopwords()));
+        _documentTerms = pipeline.run(filenames);
+        for (DocumentTerms documentTerms : _documentTerms)
+            docNames.add(documentTerms.getDocName());					// added to get the Text-Document Names as Strings in an ArrayList
+        numberOfDocuments = docNames.size();							// to memorize the number of Documents in the file
+        System.out.println(pipeline.getThroughput());
+        System.out.println("Dictionary length: " + _dictionary.length());
     }
     /**
-     * to have a complet dictionary every unique String value of the DocumentModel's wordList gets added to the dictionary
-     * after done so all the stopwords provided in a wordList of a DocumentModel are removed form the dictionary
+     * every unique word of the documents except the stopwords was already added to the dictionary while reading them
+     * after done so the words failing the document frequency limits are removed form the dictionary
+     * and the dictionary gets sorted, which gives every word its final term ID; the documents get the final term IDs as well
      */
     private void buildDictionary() {
-    	for (DocumentModel documentModel : _documentModels) {	//add every document in the file to the dictionary
-    		for (String word : documentModel.get_wordList())
-    			_dictionary.addWord(word);
-    		System.out.println("Text added; Dictionary length: " + _dictionary.length());
-    	}
-    	_dictionary.sortDictionary();							//sorting once at the end to improve efficiency
-    	
-    	DocumentModel stopwords = null;							//read the stopword as a document model
+    	VocabularyPruning pruning = new VocabularyPruning(minDocumentFrequency, maxDocumentRatio, topTerms);
+    	int removed = pruning.prune(_dictionary, _documentTerms);
+    	System.out.println(removed + " words pruned (" + pruning + "); Dictionary length: " + _dictionary.length());
+    	int[] remap = _dictionary.freeze();						//sorting once at the end to freeze the term IDs
+    	for (DocumentTerms documentTerms : _documentTerms)
+    		documentTerms.remap(remap);
+    }
+    /**
+     * reads the stopwords as a document model
+     * @return the list of stopwords, empty if the file cannot be read
+     */
+    private ArrayList<String> readStopwords() {
 		try {
-			stopwords = new DocumentModel(pathStopwords);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			return new DocumentModel(pathStopwords).get_wordList();
 		} catch (IOException e) {
-			e.printStackTrace();
+			System.err.println("unable to read stopwords " + pathStopwords + ", no stopwords are removed");
+			return new ArrayList<>();
 		}
-    	for (String word : stopwords.get_wordList())
-			_dictionary.get_wordList().remove(word);			//remove all stopwords from the dictionary
-    	System.out.println("Stopwords removed; Dictionary length: " + _dictionary.length());  	
     }
     /**
      * invertedIndex gets implemented
-     * for every documentModel in the ArrayList _documentModels a DocumentVectorModel is created and added to the ArrayList _documentVectorModels
+     * for every document in the ArrayList _documentTerms a DocumentVectorModel is created and added to the ArrayList _documentVectorModels
      */
     private void buildDocumentVectorModels() {
-    	_invertedIndex = new InvertedIndex(_dictionary);
-    	for (int i = 0; i < _documentModels.size(); i++)		//add every document model to the inverted index
-    		_invertedIndex.addRelation(_documentModels.get(i).get_wordList(), docNames.get(i));
-    	System.out.println("Inverted Index complete");
-		System.out.print("Progress of Document Vector Models");
-    	for (int i = 0; i < _documentModels.size(); i++) {		//calculate weights for every document Model
-    		_documentVectorModels.add(new DocumentVectorModel(_documentModels.get(i), _invertedIndex, _documentModels.size()));
-    		System.out.print("  " + Math.round(((double)(i+1)/(double)numberOfDocuments)*100) + "%");		//to show the programs process on the console
-    	}
-    	System.out.println();
+    	long start = System.nanoTime();
+    	MetricsRegistry.Stage stage = metrics.startStage("index");
+    	_invertedIndex = new InvertedIndex(_dictionary, positions);
+    	for (DocumentTerms documentTerms : _documentTerms)		//add every document to the inverted index
+    		_invertedIndex.addDocument(documentTerms);
+    	stage.stop();
+    	System.out.println("Inverted Index complete: " + throughput(start, numberOfDocuments));
+    	start = System.nanoTime();
+    	stage = metrics.startStage("weight");
+    	for (DocumentTerms documentTerms : _documentTerms)		//calculate weights for every document
+    		_documentVectorModels.add(new DocumentVectorModel(documentTerms, _invertedIndex, scheme));
+    	stage.stop();
+    	System.out.println("Document Vector Models complete (" + scheme + "): " + throughput(start, numberOfDocuments));
+    }
+    /**
+     * @param start - System.nanoTime() at the start of the stage
+     * @param documents - number of documents processed by the stage
+     * @return String with the documents per second since start
+     */
+    private static String throughput(long start, int documents) {
+    	double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+    	return documents + " documents in " + df.format(seconds * 1000) + " ms (" + Math.round(documents / seconds) + " docs/sec)";
     }
     /**
      * calculate the Cosine Similarity for every DocumentVectorModel in _documentVectorModels with every DocumentVectorModel
      * @param DVMs - List containing all earlier calculated DocumentVectorModels
      * @return - matrix containing all computed Cosine Similarities
      */
-    private Object[][] computeDocDocMatrix(ArrayList<DocumentVectorModel> DVMs) {
-    	Object[][] matrix = new Object[numberOfDocuments+1][numberOfDocuments+1];
-    	matrix[0][0] = "";
-    	
-    	for (int i = 0; i < numberOfDocuments; i++) {			//get the according column and row labels form the docNames variable
-    		matrix[0][i+1] = docNames.get(i);
-    		matrix[i+1][0] = docNames.get(i);
-    	}	
-    	for (int i = 0; i < numberOfDocuments; i++) {
-    		for (int j = 0; j < numberOfDocuments; j++)			//calculate the cosine similarity of every document with every document in the file 
-    			matrix[i+1][j+1] = df.format(DocumentVectorModel.cosineSimilarity(DVMs.get(i), DVMs.get(j)));
+    private SimilarityMatrix computeDocDocMatrix(ArrayList<DocumentVectorModel> DVMs) {
+    	SimilarityEngine engine = new SimilarityEngine();		//computes the upper triangle in parallel tiles
+    	MetricsRegistry.Stage stage = metrics.startStage("similarity");
+    	try {
+    		return engine.compute(DVMs);
+    	} finally {
+    		stage.stop();
+    		engine.shutdown();
+    	}
+    }
+    /**
+     * calculate the Cosine Similarity for every row of the off-heap document-term matrix with every row
+     * with the "-join" command only the rows sharing a word are compared
+     * @param documents - the weights of all documents
+     * @return - matrix containing all computed Cosine Similarities
+     */
+    private SimilarityMatrix computeDocDocMatrix(DocumentTermMatrix documents) {
+    	SimilarityEngine engine = new SimilarityEngine();
+    	MetricsRegistry.Stage stage = metrics.startStage("similarity");
+    	try {
+    		if (join)
+    			return engine.compute(createJoin(documents, 0));
+    		return engine.compute(documents);
+    	} finally {
+    		stage.stop();
+    		engine.shutdown();
     	}
-    	return matrix;
     }
     /**
-     * prints all Objects o the parameter in form of a table
+     * streams the neighbours of every document into outputFile, the matrix is never built
+     * with the "-join" command only the documents sharing a word are compared
+     * @param documents - the off-heap document-term matrix, null to use _documentVectorModels
+     */
+    private void writeSimilarities(DocumentTermMatrix documents) {
+    	long start = System.nanoTime();
+    	SimilarityEngine engine = new SimilarityEngine();
+    	MetricsRegistry.Stage stage = metrics.startStage("similarity");
+    	try (SimilarityWriter writer = new SimilarityWriter(outputFile, outputFormat, docNames)) {
+    		if (join)
+    			engine.stream(createJoin(documents, outputThreshold), neighbours, writer);
+    		else if (documents != null)
+    			engine.stream(documents, outputThreshold, neighbours, writer);
+    		else
+    			engine.stream(_documentVectorModels, outputThreshold, neighbours, writer);
+    		System.out.println(writer.getPairs() + " pairs written in " + df.format((System.nanoTime() - start) / 1e6) + " ms");
+    	} catch (IOException e) {
+    		System.err.println("unable to write " + outputFile + ": " + e.getMessage());
+    	} finally {
+    		stage.stop();
+    		engine.shutdown();
+    	}
+    }
+    /**
+     * projects the documents to reducedDimension dimensions and writes the similar pairs of the projections,
+     * or computes their matrix and prints how far it deviates from the exact Cosine Similarities
+     * @param documents - the weights of all documents
+     */
+    private void runReduced(DocumentTermMatrix documents) {
+    	long start = System.nanoTime();
+    	MetricsRegistry.Stage stage = metrics.startStage("reduce");
+    	RandomProjection projection = new RandomProjection(reducedDimension, Math.min(PROJECTION_NON_ZEROS, reducedDimension), 42);
+    	float[] vectors = projection.project(documents, ForkJoinPool.commonPool());
+    	stage.stop();
+    	System.out.println(projection + ": " + throughput(start, numberOfDocuments));
+    	SimilarityEngine engine = new SimilarityEngine();
+    	try {
+    		if (outputFile != null) {
+    	    	start = System.nanoTime();
+    	    	stage = metrics.startStage("similarity");
+    	    	try (SimilarityWriter writer = new SimilarityWriter(outputFile, outputFormat, docNames)) {
+    	    		engine.stream(vectors, reducedDimension, outputThreshold, neighbours, writer);
+    	    		System.out.println(writer.getPairs() + " pairs written in " + df.format((System.nanoTime() - start) / 1e6) + " ms");
+    	    	} catch (IOException e) {
+    	    		System.err.println("unable to write " + outputFile + ": " + e.getMessage());
+    	    	} finally {
+    	    		stage.stop();
+    	    	}
+    	    	return;
+    		}
+    		stage = metrics.startStage("similarity");
+    		matrix = engine.compute(vectors, reducedDimension);
+    		stage.stop();
+    	} finally {
+    		engine.shutdown();
+    	}
+    	SimilarityMatrix exact = computeDocDocMatrix(documents);
+    	System.out.println("Ranking deviation of the projection: " + new RankingDeviation(exact, matrix, topK));
+        System.out.println("---------------------------------------------------------------------------");
+    	System.out.println("Printing Matrix...");
+    	printMatrix(matrix);
+    }
+    /**
+     * builds the impact lists of the documents and prints how many weights prefix filtering left out
+     * @param documents - the weights of all documents
+     * @param threshold - minimum similarity of the pairs to be found
+     * @return SimilarityJoin of the documents
+     */
+    private static SimilarityJoin createJoin(DocumentTermMatrix documents, double threshold) {
+    	long start = System.nanoTime();
+    	SimilarityJoin join = new SimilarityJoin(documents, threshold);
+    	System.out.println("Similarity join: " + join.getIndexedEntries() + " of " + join.getEntries() + " weights indexed in "
+    			+ df.format((System.nanoTime() - start) / 1e6) + " ms");
+    	return join;
+    }
+    /**
+     * prints the matrix in form of a table with the document names as row and column labels
+     * the similarities are only formatted here
      * @param matrix
      */
-    private void printMatrix(Object[][] matrix) {
+    private void printMatrix(SimilarityMatrix matrix) {
+        System.out.println("---------------------------------------------------------------------------");
+        StringBuilder line = new StringBuilder("\t");
+        for (int j = 0; j < matrix.size(); j++)				//get the column labels form the docNames variable
+        	line.append('\t').append(docNames.get(j));
+        System.out.println(line);
+    	for (int i = 0; i < matrix.size(); i++) {
+    		line.setLength(0);
+    		line.append('\t').append(docNames.get(i));
+    		for (int j = 0; j < matrix.size(); j++)			//print every row of the matrix
+    			line.append('\t').append(df.format(matrix.get(i, j)));
+    		System.out.println(line);
+    	}
+    }
+    /**
+     * prints the pairs of documents with a cosine similarity of at least duplicateThreshold
+     * only the candidate pairs of MinHashLSH are compared, the number of pruned pairs is printed at the end
+     */
+    private void printNearDuplicates() {
+    	long start = System.nanoTime();
+    	MetricsRegistry.Stage stage = metrics.startStage("similarity");
+    	MinHashLSH lsh = new MinHashLSH(bands, rows, shingleSize);
+    	ArrayList<long[]> signatures = new ArrayList<>(numberOfDocuments);
+    	for (DocumentTerms documentTerms : _documentTerms)
+    		signatures.add(lsh.signature(documentTerms));
+    	System.out.println("Signatures complete: " + throughput(start, numberOfDocuments));
+    	start = System.nanoTime();
+    	ArrayList<MinHashLSH.Pair> pairs = lsh.findSimilarPairs(signatures, _documentVectorModels, duplicateThreshold);
+    	stage.stop();
+    	for (MinHashLSH.Pair pair : pairs)
+    		System.out.println(df.format(pair.similarity) + "\t" + docNames.get(pair.first) + "\t" + docNames.get(pair.second));
+    	System.out.println(pairs.size() + " near-duplicates, " + lsh.getCandidatePairs() + " of " + lsh.getTotalPairs()
+    			+ " pairs compared, " + lsh.getPrunedPairs() + " pruned in " + df.format((System.nanoTime() - start) / 1e6) + " ms");
+    }
+    /**
+     * answers every line of queriesFile through a SearchCache, so repeated queries are answered from the cache
+     * prints the best document of every query and the statistics of the cache at the end
+     * @param segmented - the segments answering the queries without a cache, null to use _invertedIndex
+     */
+    private void runQueries(SegmentedIndex segmented) {
+        System.out.println("---------------------------------------------------------------------------");
+    	System.out.println("Answering queries from " + queriesFile + "...");
+    	List<String> queries;
+    	try {
+    		queries = Files.readAllLines(Paths.get(queriesFile), StandardCharsets.UTF_8);
+    	} catch (IOException e) {
+    		System.err.println("unable to read queries " + queriesFile + ": " + e.getMessage());
+    		return;
+    	}
+    	SearchCache cache = segmented == null ? new SearchCache(_invertedIndex, 100 * topK, scheme) : null;
+    	long start = System.nanoTime();
+    	for (String line : queries) {
+    		QueryResult result = cache != null ? cache.search(line, topK) : segmented.search(line, topK);
+    		System.out.println(line + "\t" + result.size() + " documents in " + df.format(result.getLatencyNanos() / 1e6) + " ms"
+    				+ (result.size() > 0 ? "\t" + df.format(result.getScore(0)) + "\t" + result.getDocName(0) : ""));
+    	}
+    	System.out.println(queries.size() + " queries in " + df.format((System.nanoTime() - start) / 1e6) + " ms"
+    			+ (cache != null ? "; " + cache : ""));
+    }
+    /**
+     * answers the "-phrase" command over the positions of _invertedIndex, with the "-near" command
+     * the words only have to be within a window of words
+     */
+    private void searchPhrase() {
         System.out.println("---------------------------------------------------------------------------");
-    	for (Object[] row : matrix) {
-    		for (Object object : row)							//print every row of the matrix
-    			System.out.print("\t" + object);
-    		System.out.println();
+    	if (!_invertedIndex.isStorePositions()) {
+    		System.err.println("the index has no positions, build it with -positions for phrase queries");
+    		return;
+    	}
+    	PhraseQueryEngine engine = new PhraseQueryEngine(_invertedIndex, scheme);
+    	engine.setStopwords(new StopwordFilter(readStopwords()));
+    	if (window > 0) {
+    		System.out.println("Searching for \"" + phrase + "\" within " + window + " words...");
+    		printQueryResult(engine.searchNear(phrase, window, topK));
+    	}
+    	else {
+    		System.out.println("Searching for the phrase \"" + phrase + "\"...");
+    		printQueryResult(engine.searchPhrase(phrase, topK));
     	}
     }
+    /**
+     * switches _invertedIndex to compressed postings and prints their size next to the uncompressed docIDs and frequencies
+     */
+    private void compressPostings() {
+    	long start = System.nanoTime();
+    	_invertedIndex.setCompressedPostings(true);
+    	long compressed = _invertedIndex.getCompressedBytes();
+    	long postings = 0;
+    	for (int t = 0; t < _invertedIndex.getDictionary().length(); t++)
+    		postings += _invertedIndex.getDocumentFrequency(t);
+    	System.out.println("Postings compressed: " + compressed + " bytes instead of " + 8 * postings + " in "
+    			+ df.format((System.nanoTime() - start) / 1e6) + " ms");
+    }
+    /**
+     * prints the ranked documents of a query together with latency and number of postings scored
+     * @param result
+     */
+    private void printQueryResult(QueryResult result) {
+    	for (int rank = 0; rank < result.size(); rank++)
+    		System.out.println((rank + 1) + "\t" + df.format(result.getScore(rank)) + "\t" + result.getDocName(rank));
+    	System.out.println(result.size() + " documents in " + df.format(result.getLatencyNanos() / 1e6) + " ms, "
+    			+ result.getPostingsScored() + " postings scored");
+    }
     	
 }
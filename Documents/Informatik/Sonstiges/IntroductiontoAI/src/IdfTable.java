@@ -0,0 +1,65 @@
+
+/**
+ * idf of every word and the average document length of an index for one WeightingScheme
+ *
+ * computed once per generation of the index by InvertedIndex.getIdfTable() and shared
+ * by every DocumentVectorModel and QueryEngine using the same scheme. For a segment of a
+ * SegmentedIndex the document frequencies and the average length of all segments are used
+ *
+ */
+public class IdfTable {
+
+	private final int _generation;
+	private final double[] _idf;			// idf at the index of the term ID, 0 for words in no document
+	private final double _averageLength;	// average number of indexed words per document, 0 if the scheme does not need it
+
+	/**
+	 * @param invertedIndex
+	 * @param scheme
+	 */
+	IdfTable(InvertedIndex invertedIndex, WeightingScheme scheme) {
+		_generation = invertedIndex.getGeneration();
+		int numberOfTerms = invertedIndex.getDictionary().length();
+		int numberOfDocuments = invertedIndex.getCollectionSize();
+		_idf = new double[numberOfTerms];
+		double collectionAverageLength = invertedIndex.getCollectionAverageLength();
+		boolean countLength = scheme.usesLength() && collectionAverageLength < 0;
+		long totalLength = 0;
+		for (int t = 0; t < numberOfTerms; t++) {
+			int frequency = invertedIndex.getCollectionFrequency(t);
+			if (frequency <= 0)
+				continue;
+			_idf[t] = scheme.idf(frequency, numberOfDocuments);
+			if (countLength) {
+				PostingsList list = invertedIndex.getPostings(t);
+				for (int i = 0; list != null && i < list.size(); i++) {
+					if (!invertedIndex.isDeleted(list.getDocId(i)))
+						totalLength += list.getFrequency(i);
+				}
+			}
+		}
+		int segmentDocuments = invertedIndex.getNumberOfDocuments();
+		if (!scheme.usesLength())
+			_averageLength = 0;
+		else if (!countLength)
+			_averageLength = collectionAverageLength;
+		else
+			_averageLength = segmentDocuments == 0 ? 0 : (double) totalLength / segmentDocuments;
+	}
+
+	public int getGeneration() {
+		return _generation;
+	}
+
+	/**
+	 * @param termId
+	 * @return double value of the idf, 0 for unknown words
+	 */
+	public double idf(int termId) {
+		return termId >= 0 && termId < _idf.length ? _idf[termId] : 0;
+	}
+
+	public double getAverageLength() {
+		return _averageLength;
+	}
+}
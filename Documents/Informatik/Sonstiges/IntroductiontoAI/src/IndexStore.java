@@ -0,0 +1,284 @@
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * writes an InvertedIndex to a binary file and opens it again
+ *
+ * layout (all numbers big-endian):
+ *   int magic, int version, int flags (1 = positions), int number of words, int number of documents
+ *   the document names and the words of the frozen dictionary (int length + UTF-8 bytes each)
+ *   int document frequency of every word, double norm of every document
+ *   long length of the postings section, long start of the postings of every word
+ *   postings section: per document the docID gap and the term frequency, followed by the
+ *   position gaps if positions are stored, all as variable-byte numbers
+ *
+ * deleted documents are left out and the remaining ones get consecutive docIDs
+ *
+ * open() maps the file with FileChannel.map and only reads the small parts, the postings
+ * of a word are decoded the first time they are used. Files are limited to 2 GB
+ *
+ * write() goes to a temporary file in the same directory which is then moved over the
+ * target, so a failed write never damages the index that was there before. open() checks
+ * the lengths of all sections against the size of the file
+ *
+ */
+public class IndexStore {
+
+	private static final int MAGIC = 0x49525831;			// "IRX1"
+	private static final int VERSION = 1;
+	private static final int FLAG_POSITIONS = 1;
+
+	/**
+	 * writes the index without its deleted documents, its dictionary has to be frozen;
+	 * the file is only replaced once it has been written completely
+	 *
+	 * @param invertedIndex
+	 * @param filename - the name of the index file
+	 * @throws IOException - if the file cannot be written
+	 */
+	public static void write(InvertedIndex invertedIndex, String filename) throws IOException {
+		Dictionary dictionary = invertedIndex.getDictionary();
+		if (!dictionary.isFrozen())
+			throw new IllegalStateException("the dictionary has to be frozen before the index is written");
+		int numberOfTerms = dictionary.length();
+		int numberOfDocuments = invertedIndex.getNumberOfDocuments();
+		double[] norms = invertedIndex.getDocumentNorms();
+		int[] newDocIds = new int[invertedIndex.getDocIdLimit()];		// docID in the file, -1 for deleted documents
+		int[] oldDocIds = new int[numberOfDocuments];
+		for (int d = 0, next = 0; d < newDocIds.length; d++) {
+			newDocIds[d] = invertedIndex.isDeleted(d) ? -1 : next++;
+			if (newDocIds[d] != -1)
+				oldDocIds[newDocIds[d]] = d;
+		}
+
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		long[] offsets = new long[numberOfTerms];
+		int[] frequencies = new int[numberOfTerms];
+		for (int t = 0; t < numberOfTerms; t++) {
+			offsets[t] = encoded.size();
+			PostingsList list = invertedIndex.getPostings(t);
+			if (list == null)
+				continue;
+			frequencies[t] = encodePostings(list, newDocIds, encoded);
+		}
+
+		Path target = Paths.get(filename).toAbsolutePath();
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			write(temporary, invertedIndex, numberOfDocuments, oldDocIds, norms, frequencies, offsets, encoded);
+			try {
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static void write(Path path, InvertedIndex invertedIndex, int numberOfDocuments, int[] oldDocIds, double[] norms,
+			int[] frequencies, long[] offsets, ByteArrayOutputStream encoded) throws IOException {
+		Dictionary dictionary = invertedIndex.getDictionary();
+		int numberOfTerms = dictionary.length();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(invertedIndex.isStorePositions() ? FLAG_POSITIONS : 0);
+			out.writeInt(numberOfTerms);
+			out.writeInt(numberOfDocuments);
+			for (int d = 0; d < numberOfDocuments; d++)
+				writeString(out, invertedIndex.getDocName(oldDocIds[d]));
+			for (int t = 0; t < numberOfTerms; t++)
+				writeString(out, dictionary.getWord(t));
+			for (int t = 0; t < numberOfTerms; t++)
+				out.writeInt(frequencies[t]);
+			for (int d = 0; d < numberOfDocuments; d++)
+				out.writeDouble(norms[oldDocIds[d]]);
+			out.writeLong(encoded.size());
+			for (int t = 0; t < numberOfTerms; t++)
+				out.writeLong(offsets[t]);
+			encoded.writeTo(out);
+		}
+	}
+
+	/**
+	 * opens an index written by write()
+	 *
+	 * @param filename - the name of the index file
+	 * @return InvertedIndex with a frozen dictionary
+	 * @throws IOException - if the file cannot be read, is no index file or is truncated
+	 */
+	public static InvertedIndex open(String filename) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(filename + " is larger than 2 GB");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return open(buffer, filename);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException(filename + " is truncated or corrupt", e);
+		}
+	}
+
+	private static InvertedIndex open(MappedByteBuffer buffer, String filename) throws IOException {
+		if (buffer.remaining() < 20 || buffer.getInt() != MAGIC)
+			throw new IOException(filename + " is no index file");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("unsupported index version " + version + " in " + filename);
+		boolean storePositions = (buffer.getInt() & FLAG_POSITIONS) != 0;
+		int numberOfTerms = buffer.getInt();
+		int numberOfDocuments = buffer.getInt();
+		if (numberOfTerms < 0 || numberOfDocuments < 0 || 4L * numberOfTerms + 4L * numberOfDocuments > buffer.remaining())
+			throw new IOException(filename + " is corrupt: " + numberOfTerms + " words and " + numberOfDocuments
+					+ " documents do not fit into the file");
+
+		ArrayList<String> docNames = new ArrayList<>(numberOfDocuments);
+		for (int d = 0; d < numberOfDocuments; d++)
+			docNames.add(readString(buffer, filename));
+		String[] terms = new String[numberOfTerms];
+		for (int t = 0; t < numberOfTerms; t++)
+			terms[t] = readString(buffer, filename);
+		checkRemaining(buffer, 4L * numberOfTerms + 8L * numberOfDocuments + 8 + 8L * numberOfTerms, "statistics", filename);
+		int[] frequencies = new int[numberOfTerms];
+		buffer.asIntBuffer().get(frequencies);
+		buffer.position(buffer.position() + 4 * numberOfTerms);
+		double[] norms = new double[numberOfDocuments];
+		buffer.asDoubleBuffer().get(norms);
+		buffer.position(buffer.position() + 8 * numberOfDocuments);
+		long postingsLength = buffer.getLong();
+		long[] offsets = new long[numberOfTerms];
+		buffer.asLongBuffer().get(offsets);
+		buffer.position(buffer.position() + 8 * numberOfTerms);
+		if (postingsLength < 0)
+			throw new IOException(filename + " is corrupt: negative length of the postings");
+		checkRemaining(buffer, postingsLength, "postings", filename);
+		for (int t = 0; t < numberOfTerms; t++) {
+			if (offsets[t] < 0 || offsets[t] > postingsLength || t > 0 && offsets[t] < offsets[t - 1])
+				throw new IOException(filename + " is corrupt: postings of word " + t + " start at " + offsets[t]);
+		}
+
+		ByteBuffer postings = buffer.slice();
+		postings.limit((int) postingsLength);
+
+		Dictionary dictionary = new Dictionary();
+		dictionary.setFrozenTerms(terms);
+		return new InvertedIndex(dictionary, storePositions, docNames, postings, offsets, frequencies, norms);
+	}
+
+	/**
+	 * decodes the postings of one word starting at the position of the buffer
+	 *
+	 * @param encoded
+	 * @param documentFrequency - number of postings to decode
+	 * @param storePositions - true if the postings contain positions
+	 * @return PostingsList
+	 */
+	static PostingsList decodePostings(ByteBuffer encoded, int documentFrequency, boolean storePositions) {
+		PostingsList list = new PostingsList(storePositions);
+		int[] positions = storePositions ? new int[16] : null;
+		int docId = 0;
+		for (int i = 0; i < documentFrequency; i++) {
+			docId += readVInt(encoded);
+			int frequency = readVInt(encoded);
+			if (storePositions) {
+				if (positions.length < frequency)
+					positions = new int[frequency];
+				int position = 0;
+				for (int p = 0; p < frequency; p++) {
+					position += readVInt(encoded);
+					positions[p] = position;
+				}
+			}
+			list.addPosting(docId, frequency, positions, 0);
+		}
+		return list;
+	}
+
+	/**
+	 * encodes the postings of the documents which are not deleted
+	 * @return int number of postings written
+	 */
+	private static int encodePostings(PostingsList list, int[] newDocIds, ByteArrayOutputStream out) {
+		int previousDoc = 0;
+		int count = 0;
+		for (int i = 0; i < list.size(); i++) {
+			int docId = newDocIds[list.getDocId(i)];
+			if (docId == -1)
+				continue;
+			writeVInt(out, docId - previousDoc);
+			previousDoc = docId;
+			count++;
+			writeVInt(out, list.getFrequency(i));
+			if (list.hasPositions()) {
+				int previousPosition = 0;
+				for (int p = list.getPositionStart(i); p < list.getPositionEnd(i); p++) {
+					writeVInt(out, list.get_positions()[p] - previousPosition);
+					previousPosition = list.get_positions()[p];
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * writes the number in groups of 7 bits, the highest bit is set if another byte follows
+	 */
+	private static void writeVInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in, String filename) throws IOException {
+		checkRemaining(in, 4, "string", filename);
+		int length = in.getInt();
+		if (length < 0)
+			throw new IOException(filename + " is corrupt: negative string length");
+		checkRemaining(in, length, "string", filename);
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void checkRemaining(ByteBuffer in, long length, String section, String filename) throws IOException {
+		if (length > in.remaining())
+			throw new IOException(filename + " is truncated: the " + section + " section needs " + length
+					+ " bytes, " + in.remaining() + " are left");
+	}
+}
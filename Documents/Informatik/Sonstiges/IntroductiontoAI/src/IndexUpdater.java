@@ -0,0 +1,132 @@
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * keeps an InvertedIndex up to date with the ".txt"-Documents of a directory
+ *
+ * update() compares the modification time and the size of every file with the
+ * state known from the last update and only reads the new and modified files,
+ * removed files get deleted from the index. The cost of an update depends on the
+ * size of the changed documents, not on the size of the corpus; weights depending
+ * on the idf are recomputed lazily by DocumentVectorModel and QueryEngine
+ *
+ */
+public class IndexUpdater {
+
+	private final String sourceDir;
+	private final InvertedIndex invertedIndex;
+	private final StopwordFilter stopwords;			// words never added to the index
+	private final HashMap<String, FileState> files;		// state of every indexed document by its name
+
+	private int added, modified, deleted;				// changes found by the last update
+
+	/**
+	 * @param sourceDir - the directory containing the documents of the index
+	 * @param invertedIndex - index with a frozen dictionary, its document names are the file names
+	 * @param stopwords - words which are not added to the index
+	 * @param indexedAt - time the index was built or written, documents modified later count as modified
+	 */
+	public IndexUpdater(String sourceDir, InvertedIndex invertedIndex, Collection<String> stopwords, long indexedAt) {
+		this.sourceDir = sourceDir;
+		this.invertedIndex = invertedIndex;
+		this.stopwords = new StopwordFilter(stopwords);
+		files = new HashMap<>();
+		for (int docId = 0; docId < invertedIndex.getDocIdLimit(); docId++) {
+			if (!invertedIndex.isDeleted(docId))
+				files.put(invertedIndex.getDocName(docId), new FileState(docId, indexedAt, -1));
+		}
+	}
+
+	/**
+	 * adds new, replaces modified and deletes removed documents
+	 *
+	 * @return boolean value - true if the index was changed
+	 */
+	public boolean update() {
+		added = modified = deleted = 0;
+		File[] fileList = new File(sourceDir).listFiles((dir, name) -> name.endsWith(".txt"));
+		if (fileList == null)
+			fileList = new File[0];
+
+		HashSet<String> present = new HashSet<>();
+		ArrayList<String> changed = new ArrayList<>();
+		ArrayList<File> changedFiles = new ArrayList<>();
+		for (File file : fileList) {
+			present.add(file.getName());
+			FileState state = files.get(file.getName());
+			if (state == null)
+				added++;
+			else if (file.lastModified() > state.lastModified || (state.size != -1 && file.length() != state.size)) {
+				invertedIndex.deleteDocument(state.docId);		// a modified document is deleted and added again
+				files.remove(file.getName());
+				modified++;
+			}
+			else
+				continue;
+			changed.add(sourceDir + File.separator + file.getName());
+			changedFiles.add(file);
+		}
+		for (Iterator<Map.Entry<String, FileState>> it = files.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, FileState> entry = it.next();
+			if (!present.contains(entry.getKey())) {
+				invertedIndex.deleteDocument(entry.getValue().docId);
+				it.remove();
+				deleted++;
+			}
+		}
+		if (changed.isEmpty())
+			return deleted > 0;
+
+		long[] lastModified = new long[changedFiles.size()];
+		long[] sizes = new long[changedFiles.size()];
+		for (int i = 0; i < lastModified.length; i++) {		// taken before reading, a later change is found next time
+			lastModified[i] = changedFiles.get(i).lastModified();
+			sizes[i] = changedFiles.get(i).length();
+		}
+
+		int workers = Math.min(changed.size(), Runtime.getRuntime().availableProcessors());
+		IngestionPipeline pipeline = new IngestionPipeline(invertedIndex.getDictionary(), workers, invertedIndex.isStorePositions());
+		pipeline.setStopwords(stopwords);
+		ArrayList<DocumentTerms> documents = pipeline.run(changed);
+		for (DocumentTerms document : documents) {			// the dictionary is frozen, new words were appended
+			document.remap(termId -> termId);					// sorts the term IDs
+			int docId = invertedIndex.addDocument(document);
+			int i = document.getSequenceNumber();
+			files.put(document.getDocName(), new FileState(docId, lastModified[i], sizes[i]));
+		}
+		return true;
+	}
+
+	public int getAdded() {
+		return added;
+	}
+
+	public int getModified() {
+		return modified;
+	}
+
+	public int getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * docID, modification time and size of an indexed file, size is -1 if unknown
+	 */
+	private static class FileState {
+		final int docId;
+		final long lastModified;
+		final long size;
+
+		FileState(int docId, long lastModified, long size) {
+			this.docId = docId;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * reads and tokenizes documents concurrently and turns them into DocumentTerms
+ *
+ * stage 1: a pool of workers reads the files through a Tokenizer and counts the
+ *          words of every document, no word list is kept
+ * stage 2: the calling thread assigns term IDs in the Dictionary while the
+ *          workers go on with the next files
+ * the stages are connected by a bounded queue, workers wait as soon as it is
+ * full, so at most QUEUE_CAPACITY_PER_WORKER documents per worker are in flight
+ * a worker always puts END_OF_WORK into the queue, also if it dies, and the first
+ * error of a worker is rethrown by run() once all workers have finished
+ * stopwords are dropped by the workers while tokenizing, they keep their position
+ * but never get a term ID
+ *
+ */
+public class IngestionPipeline {
+
+	private static final int QUEUE_CAPACITY_PER_WORKER = 4;
+	private static final TokenizedDocument END_OF_WORK = new TokenizedDocument(null, -1, 0, null, null, null, null);
+
+	private final Dictionary dictionary;
+	private final int workers;
+	private final boolean storePositions;
+	private StopwordFilter stopwords;			// null to keep every word
+
+	private long documentsRead;
+	private long tokensRead;
+	private long failedDocuments;
+	private long elapsedNanos;
+
+	/**
+	 * uses one worker per available processor and does not keep positions
+	 *
+	 * @param dictionary - receives the words of all documents
+	 */
+	public IngestionPipeline(Dictionary dictionary) {
+		this(dictionary, Runtime.getRuntime().availableProcessors(), false);
+	}
+
+	/**
+	 * @param dictionary - receives the words of all documents
+	 * @param workers - number of threads reading and tokenizing files
+	 * @param storePositions - true if the positions of the words should be kept
+	 */
+	public IngestionPipeline(Dictionary dictionary, int workers, boolean storePositions) {
+		this.dictionary = dictionary;
+		this.workers = workers;
+		this.storePositions = storePositions;
+	}
+
+	/**
+	 * @param stopwords - words dropped while tokenizing, null to keep every word
+	 */
+	public void setStopwords(StopwordFilter stopwords) {
+		this.stopwords = stopwords;
+	}
+
+	/**
+	 * reads all files and adds their words to the dictionary. An error message
+	 * is printed to standard error for documents not successfully read.
+	 *
+	 * @param filenames - the list of filenames of text files
+	 * @return the documents in the order of the filenames, with provisional term IDs
+	 *         if the dictionary is not frozen yet
+	 * @throws RuntimeException or Error a worker died from, outside the reading of a single file
+	 * @throws IllegalStateException - if the calling thread is interrupted, its interrupt flag is set again
+	 */
+	public ArrayList<DocumentTerms> run(List<String> filenames) {
+		long start = System.nanoTime();
+		BlockingQueue<TokenizedDocument> queue = new ArrayBlockingQueue<>(workers * QUEUE_CAPACITY_PER_WORKER);
+		AtomicInteger nextFile = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		for (int w = 0; w < workers; w++)
+			pool.execute(() -> tokenizeFiles(filenames, nextFile, queue, failure));
+		pool.shutdown();
+
+		DocumentTerms[] documents = new DocumentTerms[filenames.size()];
+		int finishedWorkers = 0;
+		try {
+			while (finishedWorkers < workers) {
+				TokenizedDocument document = queue.take();
+				if (document == END_OF_WORK)
+					finishedWorkers++;
+				else if (document.terms == null)
+					failedDocuments++;
+				else {
+					documents[document.sequenceNumber] = assignTermIds(document);
+					documentsRead++;
+					tokensRead += document.length;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while reading the documents", e);
+		} finally {
+			pool.shutdownNow();			// wakes workers blocked on the full queue if the loop ended early
+		}
+		elapsedNanos = System.nanoTime() - start;
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.counter("ingest.documents").add(documentsRead);
+		metrics.counter("ingest.tokens").add(tokensRead);
+		metrics.counter("ingest.failedDocuments").add(failedDocuments);
+		metrics.histogram("ingest.tokensPerSecond").record((long) (tokensRead / (Math.max(elapsedNanos, 1) / 1e9)));
+		Throwable error = failure.get();
+		if (error instanceof Error)
+			throw (Error) error;
+		if (error != null)
+			throw (RuntimeException) error;
+
+		ArrayList<DocumentTerms> result = new ArrayList<>(documents.length);
+		for (DocumentTerms document : documents) {
+			if (document != null)
+				result.add(document);
+		}
+		return result;
+	}
+
+	/**
+	 * stage 1: takes files until none is left and puts the tokenized documents into the queue,
+	 * END_OF_WORK is put in any case so the consumer never waits for a dead worker;
+	 * the bytes allocated by the worker are added to the running stage before
+	 */
+	private void tokenizeFiles(List<String> filenames, AtomicInteger nextFile, BlockingQueue<TokenizedDocument> queue,
+			AtomicReference<Throwable> failure) {
+		long allocated = MetricsRegistry.threadAllocatedBytes();
+		try {
+			Tokenizer tokenizer = new Tokenizer();
+			MetricsRegistry.Histogram tokenizeNanos = MetricsRegistry.getDefault().histogram("ingest.tokenizeNanos");
+			int i;
+			while ((i = nextFile.getAndIncrement()) < filenames.size()) {
+				TokenizedDocument document;
+				long start = System.nanoTime();
+				try {
+					document = tokenize(tokenizer, filenames.get(i), i);
+				} catch (Exception xcp) {
+					System.err.println ("unable to read file " + filenames.get(i));
+					document = new TokenizedDocument(filenames.get(i), i, 0, null, null, null, null);
+				}
+				tokenizeNanos.record(System.nanoTime() - start);
+				queue.put(document);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException | Error e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			MetricsRegistry.getDefault().addWorkerAllocation(allocated);
+			try {
+				queue.put(END_OF_WORK);				// fails at once if interrupted, then nobody takes from the queue any more
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * counts the words of one file with a local dictionary, so a String is only
+	 * created for the first occurrence of a word in the document
+	 */
+	private TokenizedDocument tokenize(Tokenizer tokenizer, String filename, int sequenceNumber) throws Exception {
+		Dictionary local = new Dictionary();
+		int[][] sequence = { new int[256] };			// local term ID of every word in the document, -1 for stopwords
+		int[] length = { 0 };
+		StopwordFilter stopwords = this.stopwords;
+		tokenizer.tokenizeFile(filename, (buffer, offset, wordLength) -> {
+			if (length[0] == sequence[0].length)
+				sequence[0] = Arrays.copyOf(sequence[0], length[0] * 2);
+			sequence[0][length[0]++] = stopwords != null && stopwords.contains(buffer, offset, wordLength)
+					? -1 : local.addWord(buffer, offset, wordLength);
+		});
+
+		int numberOfTerms = local.length();
+		String[] terms = new String[numberOfTerms];
+		for (int id = 0; id < numberOfTerms; id++)
+			terms[id] = local.getWord(id);
+		int[] frequencies = new int[numberOfTerms];
+		int counted = 0;							// words without the stopwords
+		for (int i = 0; i < length[0]; i++) {
+			if (sequence[0][i] != -1) {
+				frequencies[sequence[0][i]]++;
+				counted++;
+			}
+		}
+
+		int[] positionOffsets = null, positions = null;
+		if (storePositions) {						// counting sort of the positions by term
+			positionOffsets = new int[numberOfTerms + 1];
+			for (int id = 0; id < numberOfTerms; id++)
+				positionOffsets[id + 1] = positionOffsets[id] + frequencies[id];
+			int[] next = Arrays.copyOf(positionOffsets, numberOfTerms);
+			positions = new int[counted];
+			for (int i = 0; i < length[0]; i++) {
+				if (sequence[0][i] != -1)
+					positions[next[sequence[0][i]]++] = i;
+			}
+		}
+		return new TokenizedDocument(new File(filename).getName(), sequenceNumber, length[0], terms, frequencies, positionOffsets, positions);
+	}
+
+	/**
+	 * stage 2: replaces the words of the document by their term IDs
+	 */
+	private DocumentTerms assignTermIds(TokenizedDocument document) {
+		int[] termIds = new int[document.terms.length];
+		for (int i = 0; i < termIds.length; i++)
+			termIds[i] = dictionary.addWord(document.terms[i]);
+		return new DocumentTerms(document.docName, document.sequenceNumber, document.length, termIds,
+				document.frequencies, document.positionOffsets, document.positions);
+	}
+
+	public long getDocumentsRead() {
+		return documentsRead;
+	}
+
+	public long getTokensRead() {
+		return tokensRead;
+	}
+
+	public long getFailedDocuments() {
+		return failedDocuments;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 *
+	 * @return String with the throughput of the last run
+	 */
+	public String getThroughput() {
+		double seconds = Math.max(elapsedNanos, 1) / 1e9;
+		return String.format("%d documents, %d tokens in %.1f ms (%.0f docs/sec, %.0f tokens/sec), %d failed",
+				documentsRead, tokensRead, elapsedNanos / 1e6, documentsRead / seconds, tokensRead / seconds, failedDocuments);
+	}
+
+	/**
+	 * words of a document counted by stage 1, terms is null if the file could not be read
+	 */
+	private static class TokenizedDocument {
+		final String docName;
+		final int sequenceNumber;
+		final int length;
+		final String[] terms;
+		final int[] frequencies;
+		final int[] positionOffsets;
+		final int[] positions;
+
+		TokenizedDocument(String docName, int sequenceNumber, int length, String[] terms, int[] frequencies,
+				int[] positionOffsets, int[] positions) {
+			this.docName = docName;
+			this.sequenceNumber = sequenceNumber;
+			this.length = length;
+			this.terms = terms;
+			this.frequencies = frequencies;
+			this.positionOffsets = positionOffsets;
+			this.positions = positions;
+		}
+	}
+}
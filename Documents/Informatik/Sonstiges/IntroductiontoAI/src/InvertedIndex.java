@@ -1,75 +1,478 @@
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 
 /**
- * states in how many documents a specific word occures
- * 
- * @variable occurence - contains the int values for every word in the
- *           dictionary at the according index as int values
+ * states in which documents a specific word occures
+ *
+ * @variable postings - contains the PostingsList for every word in the
+ *           dictionary at the according index (term ID)
  * @author marcogoette
  *
  */
 public class InvertedIndex {
-	private int[] occurence;				// Field containing the number of texts the word occurs in at the same index as the word in the dictioanry
 	private Dictionary dictionary;			// Dictionary serving as the base of the Inverted Index
-	private HashMap<String, ArrayList<String>> invertedIndex;
+	private PostingsList[] postings;		// postings of every word at the same index as the word in the dictionary, null if the word does not occur
+	private ArrayList<String> docNames;		// name of every document at the index of its docID
+	private boolean storePositions;			// true if the positions of the words are kept in the postings
+	private HashMap<WeightingScheme, double[]> documentNorms = new HashMap<>();	// length of the vector of every document per scheme
+	private int[] documentLengths;			// sum of the term frequencies of every document, null until a scheme needs it
+	private int[] maxFrequencies;			// highest term frequency of every document, null until a scheme needs it
+	private int statisticsGeneration;		// generation documentLengths and maxFrequencies were computed for
+	private int generation;					// increased with every change, so weights depending on the index can be recomputed lazily
+	private HashMap<WeightingScheme, IdfTable> idfTables = new HashMap<>();	// idf of every word per scheme, shared by all vectors
+	private int[] collectionFrequencies;	// document frequencies in all segments of a SegmentedIndex by term ID, null for a single index
+	private int collectionSize;				// number of documents in all segments
+	private double collectionAverageLength;	// average document length in all segments
+
+	private BitSet deletedDocs;				// docIDs of deleted documents, their postings stay until the index is written
+	private int numberOfDeletedDocs;
+	private int[] deletedPostings;			// number of postings of deleted documents at the index of the term ID
+	private ArrayList<int[]> forwardTerms;	// term IDs of every document, null until the first document is deleted
+
+	private ByteBuffer storedPostings;		// encoded postings of an index opened by IndexStore, decoded on first use
+	private long[] storedOffsets;			// start of the encoded postings of every word in storedPostings
+	private int[] storedFrequencies;		// document frequency of every word of an opened index
+	private volatile CompressedPostings[] compressedPostings;	// block-compressed docIDs and frequencies for the cursors, null if switched off
 
-	
 	/**
-	 * inizializes the occurence field
-	 * 
+	 * inizializes an inverted index without positions
+	 *
 	 * @param dictionary
 	 *            - to initialze the dictionary variable
 	 */
 	public InvertedIndex(Dictionary dictionary) {
+		this(dictionary, false);
+	}
+
+	/**
+	 * inizializes the postings field
+	 *
+	 * @param dictionary
+	 *            - to initialze the dictionary variable
+	 * @param storePositions
+	 *            - true if the positions of every word should be kept
+	 */
+	public InvertedIndex(Dictionary dictionary, boolean storePositions) {
 		this.dictionary = dictionary;				// implementing the dictioanry
-		occurence = new int[dictionary.length()];	// implementing the occurence field with dictionary's length
-		invertedIndex = new HashMap<>();
+		this.storePositions = storePositions;
+		postings = new PostingsList[dictionary.length()];
+		docNames = new ArrayList<>();
+		deletedDocs = new BitSet();
+		deletedPostings = new int[0];
 	}
 
 	/**
-	 * checks if the words of the dictionary appeare in the wordList and increases
-	 * the count in occurence if wordList contains word
-	 * 
+	 * inizializes an index opened by IndexStore, the postings of a word are only
+	 * decoded when they are used the first time
+	 */
+	InvertedIndex(Dictionary dictionary, boolean storePositions, ArrayList<String> docNames, ByteBuffer storedPostings,
+			long[] storedOffsets, int[] storedFrequencies, double[] documentNorms) {
+		this(dictionary, storePositions);
+		this.docNames = docNames;
+		this.storedPostings = storedPostings;
+		this.storedOffsets = storedOffsets;
+		this.storedFrequencies = storedFrequencies;
+		this.documentNorms.put(WeightingScheme.LOG_TF_IDF, documentNorms);
+	}
+
+	/**
+	 * adds a document to the index in a single pass over its words
+	 * words which are not part of the dictionary are skipped, but still count
+	 * for the positions
+	 *
 	 * @param wordList
 	 *            - the ArrayList of a DocumentModel
+	 * @param docName
+	 * @return int docID of the added document
 	 */
-	public void addRelation(ArrayList<String> wordList, String docName) {
+	public int addRelation(ArrayList<String> wordList, String docName) {
+		int docId = startDocument(docName);
+		int[] termIds = new int[wordList.size()];
 		int count = 0;
-		ArrayList<String> x;
-		for (String word : dictionary.get_wordList()) {
-			if (wordList.contains(word)) {
-				occurence[count]++;							// increasing the occurence of a word
-				if (invertedIndex.containsKey(word)) {		// constructing the inverted - not necessary for the calculations but to show on the console
-					x = invertedIndex.get(word);
-					x.add(docName);
-				} else
-					x = new ArrayList<>();
-					x.add(docName);
-				invertedIndex.put(word, x);
+		int position = 0;
+		for (String word : wordList) {
+			int termId = dictionary.indexOfWord(word);
+			if (termId != -1) {
+				PostingsList list = getOrCreatePostings(termId);
+				if (list.size() == 0 || list.getDocId(list.size() - 1) != docId)
+					termIds[count++] = termId;				// first occurrence in the document
+				list.addOccurrence(docId, position);
+			}
+			position++;
+		}
+		if (forwardTerms != null) {
+			termIds = Arrays.copyOf(termIds, count);
+			Arrays.sort(termIds);
+			forwardTerms.add(termIds);
+		}
+		return docId;
+	}
+
+	/**
+	 * adds a document whose words were already counted, e.g. by the IngestionPipeline
+	 * the term IDs have to be the ones of the dictionary of this index
+	 *
+	 * @param terms
+	 * @return int docID of the added document
+	 */
+	public int addDocument(DocumentTerms terms) {
+		if (storePositions && !terms.hasPositions())
+			throw new IllegalArgumentException("the positions of " + terms.getDocName() + " are missing");
+		int docId = startDocument(terms.getDocName());
+		int[] termIds = terms.get_termIds();
+		int[] frequencies = terms.get_frequencies();
+		for (int i = 0; i < termIds.length; i++) {
+			int from = terms.hasPositions() ? terms.get_positionOffsets()[i] : 0;
+			getOrCreatePostings(termIds[i]).addPosting(docId, frequencies[i], terms.get_positions(), from);
+		}
+		if (forwardTerms != null)
+			forwardTerms.add(termIds.clone());
+		return docId;
+	}
+
+	/**
+	 * appends all documents of a segment with new docIDs after the ones of this index,
+	 * the postings are copied without decoding the documents again
+	 *
+	 * @param segment - index with its own dictionary
+	 * @param remap - term ID in this index at the index of the term ID in the segment
+	 */
+	void appendSegment(InvertedIndex segment, int[] remap) {
+		int docBase = docNames.size();
+		for (int d = 0; d < segment.getDocIdLimit(); d++)
+			startDocument(segment.getDocName(d));
+		for (int t = 0; t < remap.length; t++) {
+			PostingsList list = segment.getPostings(t);
+			if (list == null)
+				continue;
+			PostingsList target = getOrCreatePostings(remap[t]);
+			for (int i = 0; i < list.size(); i++) {
+				int from = list.hasPositions() ? list.getPositionStart(i) : 0;
+				target.addPosting(docBase + list.getDocId(i), list.getFrequency(i), list.get_positions(), from);
 			}
-			count++;
 		}
+		forwardTerms = null;						// rebuilt from the postings on the next delete
+		for (int d = 0; d < segment.getDocIdLimit(); d++) {
+			if (segment.isDeleted(d))
+				deleteDocument(docBase + d);
+		}
+	}
+
+	/**
+	 * lets the weights of this segment use the document frequencies and the average document
+	 * length of all segments, so scores of different segments can be compared
+	 *
+	 * @param documentFrequencies - document frequency in all segments at the index of the term ID of this segment
+	 * @param numberOfDocuments - number of documents in all segments
+	 * @param averageLength - average number of indexed words per document in all segments
+	 */
+	void setCollectionStatistics(int[] documentFrequencies, int numberOfDocuments, double averageLength) {
+		collectionFrequencies = documentFrequencies;
+		collectionSize = numberOfDocuments;
+		collectionAverageLength = averageLength;
+		documentNorms.clear();
+		generation++;
+	}
+
+	/**
+	 * @param termId
+	 * @return int value of the document frequency the idf is computed from, the one of all segments if known
+	 */
+	public int getCollectionFrequency(int termId) {
+		if (collectionFrequencies != null)
+			return termId < collectionFrequencies.length ? collectionFrequencies[termId] : 0;
+		return getDocumentFrequency(termId);
+	}
+
+	/**
+	 * @return int value of the number of documents the idf is computed from, the one of all segments if known
+	 */
+	public int getCollectionSize() {
+		return collectionFrequencies != null ? collectionSize : getNumberOfDocuments();
+	}
+
+	/**
+	 * @return double value of the average document length of all segments, -1 for a single index
+	 */
+	double getCollectionAverageLength() {
+		return collectionFrequencies != null ? collectionAverageLength : -1;
+	}
+
+	/**
+	 * deletes a document, the cost depends on the number of its words only
+	 * the postings of the document are kept but skipped, and the document
+	 * frequencies of its words are decreased
+	 *
+	 * @param docId
+	 * @return boolean value - true if the document was not deleted before
+	 */
+	public boolean deleteDocument(int docId) {
+		if (docId < 0 || docId >= docNames.size() || deletedDocs.get(docId))
+			return false;
+		if (forwardTerms == null)
+			buildForwardTerms();
+		for (int termId : forwardTerms.get(docId)) {
+			if (termId >= deletedPostings.length)
+				deletedPostings = Arrays.copyOf(deletedPostings, Math.max(termId + 1, postings.length));
+			deletedPostings[termId]++;
+		}
+		forwardTerms.set(docId, null);
+		deletedDocs.set(docId);
+		numberOfDeletedDocs++;
+		documentNorms.clear();
+		generation++;
+		return true;
+	}
+
+	/**
+	 *
+	 * @param docId
+	 * @return boolean value - true if the document was deleted
+	 */
+	public boolean isDeleted(int docId) {
+		return deletedDocs.get(docId);
+	}
+
+	/**
+	 *
+	 * @return int value which is increased whenever a document is added or deleted
+	 */
+	public int getGeneration() {
+		return generation;
 	}
 
 	/**
 	 * returns int value representing in how many documents the String parameter
 	 * occurs
-	 * 
+	 *
 	 * @param word
 	 * @return -1 if the word is not found in the dictionary
 	 */
 	public int getDocumentFrequency(String word) {
-		return occurence[dictionary.get_wordList().indexOf(word)];
+		int index = dictionary.indexOfWord(word);
+		return index == -1 ? -1 : getDocumentFrequency(index);
 	}
 
+	/**
+	 * returns int value representing in how many documents the word with the
+	 * term ID occurs, derived from the length of its postings
+	 *
+	 * @param termId
+	 * @return int document frequency
+	 */
+	public int getDocumentFrequency(int termId) {
+		if (storedFrequencies != null && termId < storedFrequencies.length
+				&& (termId >= postings.length || postings[termId] == null))
+			return storedFrequencies[termId];			// not decoded yet
+		PostingsList list = getPostings(termId);
+		if (list == null)
+			return 0;
+		return termId < deletedPostings.length ? list.size() - deletedPostings[termId] : list.size();
+	}
+
+	/**
+	 *
+	 * @param termId
+	 * @return the postings of the word with the term ID, null if it does not occur in any document
+	 */
+	public PostingsList getPostings(int termId) {
+		if (termId >= postings.length)
+			return null;
+		if (storedPostings != null)
+			return loadPostings(termId);		// the slots of an opened index are filled under the lock
+		return postings[termId];
+	}
+
+	/**
+	 * the cursor of a query term: over the compressed postings if they are switched on,
+	 * otherwise over the PostingsList
+	 *
+	 * @param termId
+	 * @return PostingsCursor pointing at the first posting, null if the word does not occur in any document
+	 */
+	public PostingsCursor cursor(int termId) {
+		if (compressedPostings != null) {
+			CompressedPostings compressed = loadCompressedPostings(termId);
+			return compressed == null ? null : compressed.cursor();
+		}
+		PostingsList list = getPostings(termId);
+		return list == null ? null : list.cursor();
+	}
+
+	/**
+	 * switches the cursors to postings compressed in blocks of CompressedPostings.BLOCK_SIZE,
+	 * a word is compressed the first time a cursor is asked for. The PostingsLists stay the
+	 * uncompressed baseline; the postings of an opened index are decoded and compressed
+	 * without keeping the PostingsList
+	 *
+	 * @param compressed - false to go back to the uncompressed postings
+	 */
+	public synchronized void setCompressedPostings(boolean compressed) {
+		compressedPostings = compressed ? new CompressedPostings[Math.max(postings.length, dictionary.length())] : null;
+	}
+
+	public boolean isCompressedPostings() {
+		return compressedPostings != null;
+	}
+
+	/**
+	 * compresses the postings of every word at once, e.g. to report their size
+	 *
+	 * @return long value of the bytes of all compressed postings, 0 if the compression is switched off
+	 */
+	public long getCompressedBytes() {
+		long bytes = 0;
+		for (int t = 0; compressedPostings != null && t < compressedPostings.length; t++) {
+			CompressedPostings compressed = loadCompressedPostings(t);
+			if (compressed != null)
+				bytes += compressed.sizeInBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * returns the idf of every word for the scheme, computed once per generation
+	 * and shared by every caller using the same scheme
+	 *
+	 * @param scheme
+	 * @return IdfTable of the current generation
+	 */
+	public synchronized IdfTable getIdfTable(WeightingScheme scheme) {
+		IdfTable table = idfTables.get(scheme);
+		if (table == null || table.getGeneration() != generation) {
+			table = new IdfTable(this, scheme);
+			idfTables.put(scheme, table);
+		}
+		return table;
+	}
+
+	/**
+	 * returns the euclidean length of the log-tf idf vector (1 + log10 tf) * log10(N / df)
+	 * of every document, the norms stored in an index file
+	 *
+	 * @return double field containing the norm at the index of the docID
+	 */
+	public double[] getDocumentNorms() {
+		return getDocumentNorms(WeightingScheme.LOG_TF_IDF);
+	}
+
+	/**
+	 * returns the euclidean length of the vector of every document weighted with the scheme,
+	 * computed from the postings once per generation and scheme
+	 *
+	 * @param scheme
+	 * @return double field containing the norm at the index of the docID
+	 */
+	public synchronized double[] getDocumentNorms(WeightingScheme scheme) {
+		double[] norms = documentNorms.get(scheme);
+		if (norms != null)
+			return norms;
+		IdfTable table = getIdfTable(scheme);
+		int[] lengths = scheme.usesLength() || scheme.usesMaxFrequency() ? getDocumentLengths() : null;
+		int[] max = lengths != null ? maxFrequencies : null;
+		norms = new double[docNames.size()];
+		for (int t = 0; t < postings.length; t++) {
+			PostingsList list = getPostings(t);
+			if (list == null)
+				continue;
+			double idf = table.idf(t);
+			if (idf == 0.0)
+				continue;
+			for (int i = 0; i < list.size(); i++) {
+				int docId = list.getDocId(i);
+				double weight = scheme.tf(list.getFrequency(i), max != null ? max[docId] : 0,
+						lengths != null ? lengths[docId] : 0, table.getAverageLength()) * idf;
+				if (!Double.isInfinite(weight))			// like the DocumentVectorModels
+					norms[docId] += weight * weight;
+			}
+		}
+		for (int d = 0; d < norms.length; d++)
+			norms[d] = deletedDocs.get(d) ? 0 : Math.sqrt(norms[d]);
+		documentNorms.put(scheme, norms);
+		return norms;
+	}
+
+	/**
+	 * @return int field containing the number of indexed words at the index of the docID
+	 */
+	public synchronized int[] getDocumentLengths() {
+		computeDocumentStatistics();
+		return documentLengths;
+	}
+
+	/**
+	 * @return int field containing the highest term frequency at the index of the docID
+	 */
+	public synchronized int[] getMaxFrequencies() {
+		computeDocumentStatistics();
+		return maxFrequencies;
+	}
+
+	/**
+	 * sums up the term frequencies of every document in one pass over the postings,
+	 * only done once per generation and only for schemes depending on them
+	 */
+	private void computeDocumentStatistics() {
+		if (documentLengths != null && statisticsGeneration == generation)
+			return;
+		int[] lengths = new int[docNames.size()];
+		int[] max = new int[docNames.size()];
+		for (int t = 0; t < postings.length; t++) {
+			PostingsList list = getPostings(t);
+			for (int i = 0; list != null && i < list.size(); i++) {
+				int docId = list.getDocId(i);
+				lengths[docId] += list.getFrequency(i);
+				max[docId] = Math.max(max[docId], list.getFrequency(i));
+			}
+		}
+		documentLengths = lengths;
+		maxFrequencies = max;
+		statisticsGeneration = generation;
+	}
+
+	/**
+	 *
+	 * @return int field containing the document frequency of every word at the
+	 *         same index as the word in the dictionary
+	 */
 	public int[] getOccurence() {
+		int[] occurence = new int[dictionary.length()];
+		for (int i = 0; i < occurence.length; i++)
+			occurence[i] = getDocumentFrequency(i);
 		return occurence;
 	}
 
-	public void setOccurence(int[] occurence) {
-		this.occurence = occurence;
+	/**
+	 *
+	 * @return int value representing the number of documents in the index, without the deleted ones
+	 */
+	public int getNumberOfDocuments() {
+		return docNames.size() - numberOfDeletedDocs;
+	}
+
+	/**
+	 *
+	 * @return int value larger than every docID, including the ones of deleted documents
+	 */
+	public int getDocIdLimit() {
+		return docNames.size();
+	}
+
+	/**
+	 *
+	 * @param docId
+	 * @return the name of the document with the docID
+	 */
+	public String getDocName(int docId) {
+		return docNames.get(docId);
+	}
+
+	public boolean isStorePositions() {
+		return storePositions;
 	}
 
 	public Dictionary getDictionary() {
@@ -83,8 +486,107 @@ public class InvertedIndex {
 	 * necessary for the "debug" command
 	 */
 	public void printInvertedIndex() {
-		for (String key : invertedIndex.keySet()) {
-			System.out.println(key + ": " + invertedIndex.get(key).toString());
+		for (int termId = 0; termId < postings.length; termId++) {
+			PostingsList list = getPostings(termId);
+			if (list == null)
+				continue;
+			StringBuilder line = new StringBuilder(dictionary.getWord(termId)).append(": [");
+			for (int i = 0; i < list.size(); i++) {
+				if (deletedDocs.get(list.getDocId(i)))
+					continue;
+				if (line.charAt(line.length() - 1) != '[')
+					line.append(", ");
+				line.append(docNames.get(list.getDocId(i))).append('(').append(list.getFrequency(i)).append(')');
+			}
+			System.out.println(line.append(']'));
+		}
+	}
+
+	/**
+	 * registers the name of a new document and returns its docID
+	 */
+	private int startDocument(String docName) {
+		if (compressedPostings != null)				// compressed again on the next query
+			compressedPostings = new CompressedPostings[Math.max(postings.length, dictionary.length())];
+		documentNorms.clear();
+		generation++;
+		docNames.add(docName);
+		return docNames.size() - 1;
+	}
+
+	/**
+	 * collects the term IDs of every document from the postings, only done once
+	 * the first document is deleted
+	 */
+	private void buildForwardTerms() {
+		int[] counts = new int[docNames.size()];
+		for (int t = 0; t < postings.length; t++) {
+			PostingsList list = getPostings(t);
+			for (int i = 0; list != null && i < list.size(); i++)
+				counts[list.getDocId(i)]++;
+		}
+		forwardTerms = new ArrayList<>(docNames.size());
+		for (int d = 0; d < counts.length; d++)
+			forwardTerms.add(new int[counts[d]]);
+		Arrays.fill(counts, 0);
+		for (int t = 0; t < postings.length; t++) {
+			PostingsList list = getPostings(t);
+			for (int i = 0; list != null && i < list.size(); i++) {
+				int docId = list.getDocId(i);
+				forwardTerms.get(docId)[counts[docId]++] = t;
+			}
+		}
+	}
+
+	/**
+	 * returns the postings of the term ID and creates them if necessary,
+	 * the postings field grows if words were added to the dictionary
+	 */
+	private PostingsList getOrCreatePostings(int termId) {
+		if (termId >= postings.length)
+			postings = Arrays.copyOf(postings, Math.max(termId + 1, postings.length * 2));
+		if (getPostings(termId) == null)
+			postings[termId] = new PostingsList(storePositions);
+		return postings[termId];
+	}
+
+	/**
+	 * compresses the postings of the word, several threads may ask for them at once.
+	 * The slots are only read under the lock, a thread reading them without it could
+	 * see a CompressedPostings before its fields are written
+	 *
+	 * @return the compressed postings, null if the word does not occur or the compression is switched off
+	 */
+	private synchronized CompressedPostings loadCompressedPostings(int termId) {
+		if (compressedPostings == null || termId >= compressedPostings.length)
+			return null;
+		if (compressedPostings[termId] == null) {
+			PostingsList list;
+			if (termId < postings.length && postings[termId] == null && storedPostings != null
+					&& termId < storedFrequencies.length && storedFrequencies[termId] > 0) {
+				ByteBuffer encoded = storedPostings.duplicate();
+				encoded.position((int) storedOffsets[termId]);
+				list = IndexStore.decodePostings(encoded, storedFrequencies[termId], storePositions);
+			}
+			else
+				list = getPostings(termId);
+			if (list == null)
+				return null;
+			compressedPostings[termId] = new CompressedPostings(list);
+		}
+		return compressedPostings[termId];
+	}
+
+	/**
+	 * decodes the stored postings of the word, several threads may ask for them at once.
+	 * Like the compressed postings, the slots of an opened index are only read under the lock
+	 */
+	private synchronized PostingsList loadPostings(int termId) {
+		if (postings[termId] == null && termId < storedFrequencies.length && storedFrequencies[termId] > 0) {
+			ByteBuffer encoded = storedPostings.duplicate();
+			encoded.position((int) storedOffsets[termId]);
+			postings[termId] = IndexStore.decodePostings(encoded, storedFrequencies[termId], storePositions);
 		}
+		return postings[termId];
 	}
 }
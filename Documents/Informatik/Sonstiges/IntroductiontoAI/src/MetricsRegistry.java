@@ -0,0 +1,321 @@
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * counters and histograms of the hot paths, readable through JMX and as plain text
+ *
+ * counters and histograms are created on first use by name and can be updated from
+ * any thread without locking. A Stage measures the time, the heap high-water mark and
+ * the bytes allocated by one step of the program, whichever threads do its work, e.g.
+ * Stage stage = MetricsRegistry.getDefault().startStage("index"); ... stage.stop();
+ * The JVM counts the allocated bytes per thread, so the worker threads of a stage add
+ * theirs with threadAllocatedBytes() and addWorkerAllocation(). Only one stage can run at
+ * a time, as the high-water mark of the heap is reset for the whole JVM
+ * Every counter and every histogram statistic is an attribute of the MBean
+ * "IRTester:type=Metrics"
+ *
+ */
+public class MetricsRegistry implements DynamicMBean {
+
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+	private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();	// null if the JVM does not count allocations
+
+	private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private final AtomicReference<Stage> runningStage = new AtomicReference<>();
+
+	/**
+	 * @return the registry used by the whole program
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param name
+	 * @return the counter with the name, created if it does not exist yet
+	 */
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	/**
+	 * @param name
+	 * @return the histogram with the name, created if it does not exist yet
+	 */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * starts measuring a stage, the results are recorded as stage.&lt;name&gt;.* when it is stopped
+	 *
+	 * stages must not overlap: starting one resets the peak usage of every memory pool,
+	 * which would spoil the heapPeakBytes of a stage still running
+	 *
+	 * @param name
+	 * @return Stage to stop at the end of the step
+	 * @throws IllegalStateException - if another stage has not been stopped yet
+	 */
+	public Stage startStage(String name) {
+		Stage stage = new Stage(name);
+		if (!runningStage.compareAndSet(null, stage))
+			throw new IllegalStateException("stage " + name + " started while stage " + runningStage.get().name + " is running");
+		stage.start();
+		return stage;
+	}
+
+	/**
+	 * @return long value of the bytes the current thread has allocated so far, -1 if the JVM does not count them
+	 */
+	public static long threadAllocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * adds the bytes the current thread allocated since threadAllocatedBytes() returned since
+	 * to the running stage; called by worker threads at the end of their work. Nothing is
+	 * added if no stage is running or the thread is the one that started the stage, its
+	 * allocations are counted by stop()
+	 *
+	 * @param since - value of threadAllocatedBytes() at the start of the work
+	 */
+	public void addWorkerAllocation(long since) {
+		Stage stage = runningStage.get();
+		if (stage != null && since >= 0 && Thread.currentThread() != stage.thread)
+			stage.workerAllocated.add(threadAllocatedBytes() - since);
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		return counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled() ? counter : null;
+	}
+
+	/**
+	 * registers the registry at the platform MBean server, does nothing if it is registered already
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("IRTester:type=Metrics");
+			if (!server.isRegistered(objectName))
+				server.registerMBean(this, objectName);
+		} catch (Exception e) {
+			System.err.println("unable to register the metrics MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return String with every counter and histogram, one per line in alphabetical order
+	 */
+	public String dump() {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Object> entry : values().entrySet())
+			text.append(entry.getKey()).append(" = ").append(entry.getValue()).append(System.lineSeparator());
+		return text.toString();
+	}
+
+	/**
+	 * every value of the registry by its attribute name
+	 */
+	private TreeMap<String, Object> values() {
+		TreeMap<String, Object> values = new TreeMap<>();
+		for (Map.Entry<String, Counter> entry : counters.entrySet())
+			values.put(entry.getKey(), entry.getValue().get());
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+			Histogram histogram = entry.getValue();
+			values.put(entry.getKey() + ".count", histogram.getCount());
+			values.put(entry.getKey() + ".mean", histogram.getMean());
+			values.put(entry.getKey() + ".max", histogram.getMax());
+			values.put(entry.getKey() + ".p50", histogram.getPercentile(0.5));
+			values.put(entry.getKey() + ".p99", histogram.getPercentile(0.99));
+		}
+		return values;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Object value = values().get(attribute);
+		if (value == null)
+			throw new AttributeNotFoundException(attribute);
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		TreeMap<String, Object> values = values();
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			if (values.containsKey(attribute))
+				list.add(new Attribute(attribute, values.get(attribute)));
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("the metrics are read-only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName), "the metrics have no operations");
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (Map.Entry<String, Object> entry : values().entrySet())
+			attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+					entry.getKey(), true, false, false));
+		return new MBeanInfo(getClass().getName(), "counters and histograms of the IR pipeline",
+				attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+	}
+
+	/**
+	 * number which is only increased
+	 */
+	public static class Counter {
+		private final LongAdder value = new LongAdder();
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public void increment() {
+			value.increment();
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	/**
+	 * distribution of non-negative values in buckets of powers of two,
+	 * the percentiles are the upper bounds of their buckets
+	 */
+	public static class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(64);	// bucket i holds values below 2^i
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private volatile long max;
+
+		public void record(long value) {
+			value = Math.max(value, 0);
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+			count.increment();
+			sum.add(value);
+			if (value > max) {
+				synchronized (this) {
+					if (value > max)
+						max = value;
+				}
+			}
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param quantile - between 0 and 1
+		 * @return long value no value of the quantile is above, at most the maximum
+		 */
+		public long getPercentile(double quantile) {
+			long n = count.sum();
+			if (n == 0)
+				return 0;
+			long rank = (long) Math.ceil(quantile * n);
+			long seen = 0;
+			for (int i = 0; i < 64; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank)
+					return Math.min(i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1), max);
+			}
+			return max;
+		}
+	}
+
+	/**
+	 * time, heap high-water mark and allocated bytes of one step, recorded when it is stopped:
+	 * the histograms stage.&lt;name&gt;.nanos and stage.&lt;name&gt;.heapPeakBytes and the counter
+	 * stage.&lt;name&gt;.allocatedBytes, which holds the bytes of the thread that started the stage
+	 * and of its workers
+	 */
+	public class Stage {
+		private final String name;
+		private final Thread thread;			// started the stage, has to stop it as well
+		private final LongAdder workerAllocated = new LongAdder();
+		private long start;
+		private long allocated;					// threadAllocatedBytes() of thread at the start
+
+		private Stage(String name) {
+			this.name = name;
+			thread = Thread.currentThread();
+		}
+
+		private void start() {
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				pool.resetPeakUsage();
+			allocated = threadAllocatedBytes();
+			start = System.nanoTime();
+		}
+
+		/**
+		 * records the stage
+		 *
+		 * @return long value of the elapsed nanoseconds
+		 */
+		public long stop() {
+			long elapsed = System.nanoTime() - start;
+			long peak = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP)
+					peak += pool.getPeakUsage().getUsed();
+			}
+			histogram("stage." + name + ".nanos").record(elapsed);
+			histogram("stage." + name + ".heapPeakBytes").record(peak);
+			if (allocated >= 0)
+				counter("stage." + name + ".allocatedBytes").add(threadAllocatedBytes() - allocated + workerAllocated.sum());
+			runningStage.compareAndSet(this, null);
+			return elapsed;
+		}
+	}
+}
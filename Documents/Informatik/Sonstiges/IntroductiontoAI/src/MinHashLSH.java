@@ -0,0 +1,209 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * finds near-duplicate documents without comparing every pair
+ *
+ * every document is reduced to a MinHash signature over its word shingles
+ * (sequences of shingleSize consecutive words). The signature is cut into bands
+ * of rows values, documents with an equal band land in the same bucket and become
+ * candidate pairs. Only the candidates are compared with the exact cosine
+ * similarity of their DocumentVectorModels.
+ * a document with fewer words than shingleSize is one shingle of all its words,
+ * a document without words has an empty signature and is never a candidate
+ *
+ * two documents with a shingle Jaccard similarity s become candidates with the
+ * probability 1 - (1 - s^rows)^bands: more bands find more pairs (recall), more
+ * rows per band create fewer candidates (speed)
+ *
+ */
+public class MinHashLSH {
+
+	private final int bands;
+	private final int rows;
+	private final int shingleSize;
+	private final long[] seeds;				// one seed per hash function
+
+	private long totalPairs;
+	private long candidatePairs;
+
+	/**
+	 * @param bands - number of bands of the signature
+	 * @param rows - number of MinHash values per band
+	 * @param shingleSize - number of consecutive words forming a shingle
+	 */
+	public MinHashLSH(int bands, int rows, int shingleSize) {
+		if (bands < 1 || rows < 1 || shingleSize < 1)
+			throw new IllegalArgumentException("bands, rows and shingleSize have to be at least 1");
+		this.bands = bands;
+		this.rows = rows;
+		this.shingleSize = shingleSize;
+		seeds = new long[bands * rows];
+		long seed = 0x2545F4914F6CDD1DL;
+		for (int i = 0; i < seeds.length; i++)
+			seeds[i] = seed = mix(seed + i);
+	}
+
+	/**
+	 * computes the signature of a document from the sequence of its term IDs
+	 *
+	 * @param documentTerms - document with positions
+	 * @return long field of bands * rows MinHash values
+	 */
+	public long[] signature(DocumentTerms documentTerms) {
+		if (!documentTerms.hasPositions())
+			throw new IllegalArgumentException("the positions of " + documentTerms.getDocName() + " are needed for shingles");
+		return signature(documentTerms.getTermSequence());
+	}
+
+	/**
+	 * computes the signature of a document from its word list
+	 *
+	 * @param documentModel
+	 * @return long field of bands * rows MinHash values
+	 */
+	public long[] signature(DocumentModel documentModel) {
+		ArrayList<String> words = documentModel.get_wordList();
+		int[] tokens = new int[words.size()];
+		for (int i = 0; i < tokens.length; i++)
+			tokens[i] = words.get(i).hashCode();
+		return signature(tokens);
+	}
+
+	/**
+	 * @param signature
+	 * @return true if the document of the signature had no words
+	 */
+	public static boolean isEmpty(long[] signature) {
+		return signature.length == 0 || signature[0] == Long.MAX_VALUE;
+	}
+
+	/**
+	 * computes the signature from a sequence of tokens, tokens equal to -1 (e.g. stopwords) are skipped
+	 */
+	private long[] signature(int[] tokens) {
+		long[] signature = new long[seeds.length];
+		Arrays.fill(signature, Long.MAX_VALUE);
+		long[] window = new long[shingleSize];
+		int filled = 0;
+		for (int token : tokens) {
+			if (token == -1)
+				continue;
+			System.arraycopy(window, 1, window, 0, shingleSize - 1);
+			window[shingleSize - 1] = token;
+			if (++filled >= shingleSize)
+				addShingle(signature, window, 0);
+		}
+		if (filled > 0 && filled < shingleSize)		// too short for a full shingle
+			addShingle(signature, window, shingleSize - filled);
+		return signature;
+	}
+
+	/**
+	 * hashes the words of the window from the index on to a shingle and keeps the minimum of every hash function
+	 */
+	private void addShingle(long[] signature, long[] window, int from) {
+		long shingle = 0;
+		for (int w = from; w < window.length; w++)
+			shingle = mix(shingle * 31 + window[w]);
+		for (int i = 0; i < seeds.length; i++)
+			signature[i] = Math.min(signature[i], mix(shingle ^ seeds[i]));
+	}
+
+	/**
+	 * returns every pair of documents with a cosine similarity of at least the threshold
+	 * among the candidate pairs found by the LSH buckets
+	 *
+	 * @param signatures - signature of every document at the index of its vector
+	 * @param DVMs - the DocumentVectorModels at the same index
+	 * @param threshold - minimum cosine similarity
+	 * @return ArrayList of the similar pairs
+	 */
+	public ArrayList<Pair> findSimilarPairs(List<long[]> signatures, List<DocumentVectorModel> DVMs, double threshold) {
+		int n = signatures.size();
+		totalPairs = (long) n * (n - 1) / 2;
+		HashSet<Long> candidates = new HashSet<>();
+		for (int band = 0; band < bands; band++) {
+			HashMap<Long, int[]> buckets = new HashMap<>();		// band hash -> documents (count in the first element)
+			for (int d = 0; d < n; d++) {
+				if (isEmpty(signatures.get(d)))
+					continue;
+				long hash = band;
+				for (int r = 0; r < rows; r++)
+					hash = mix(hash * 31 + signatures.get(d)[band * rows + r]);
+				int[] bucket = buckets.get(hash);
+				if (bucket == null)
+					buckets.put(hash, bucket = new int[4]);
+				else if (bucket[0] + 1 == bucket.length)
+					buckets.put(hash, bucket = Arrays.copyOf(bucket, bucket.length * 2));
+				for (int i = 1; i <= bucket[0]; i++)
+					candidates.add(((long) bucket[i] << 32) | d);
+				bucket[++bucket[0]] = d;
+			}
+		}
+		candidatePairs = candidates.size();
+
+		ArrayList<Pair> pairs = new ArrayList<>();
+		for (long candidate : candidates) {
+			int first = (int) (candidate >>> 32);
+			int second = (int) candidate;
+			double similarity = DocumentVectorModel.cosineSimilarity(DVMs.get(first), DVMs.get(second));
+			if (similarity >= threshold)
+				pairs.add(new Pair(first, second, similarity));
+		}
+		pairs.sort((a, b) -> a.first != b.first ? Integer.compare(a.first, b.first) : Integer.compare(a.second, b.second));
+		return pairs;
+	}
+
+	/**
+	 *
+	 * @return long value representing the number of pairs of the last search
+	 */
+	public long getTotalPairs() {
+		return totalPairs;
+	}
+
+	/**
+	 *
+	 * @return long value representing the number of pairs compared exactly in the last search
+	 */
+	public long getCandidatePairs() {
+		return candidatePairs;
+	}
+
+	/**
+	 *
+	 * @return long value representing the number of pairs skipped in the last search
+	 */
+	public long getPrunedPairs() {
+		return totalPairs - candidatePairs;
+	}
+
+	/**
+	 * finalizer of SplitMix64, spreads the bits of the value
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * two documents, given by the index of their vectors, and their cosine similarity
+	 */
+	public static class Pair {
+		public final int first;
+		public final int second;
+		public final double similarity;
+
+		Pair(int first, int second, double similarity) {
+			this.first = first;
+			this.second = second;
+			this.similarity = similarity;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * answers phrase queries ("new york") and proximity queries (all words within k words)
+ * over the positions stored in the postings of an InvertedIndex
+ *
+ * the postings of the query words are intersected starting with the rarest word, the
+ * cursors of the other words are only advanced to the docIDs of the rarest one, so they
+ * work over uncompressed and compressed postings alike.
+ * Positions are only compared in the documents containing every word; for a phrase the
+ * positions of the rarest word are the anchors and the positions of the other words are
+ * looked up at their offset from it. Stopwords of the phrase are gaps: they have no
+ * postings but keep their position, like in the indexed documents.
+ * A document scores (1 + log10 matches) times the summed idf of the words, divided by
+ * the norm of the document; idf and norm are the ones of the WeightingScheme
+ *
+ */
+public class PhraseQueryEngine {
+
+	private final InvertedIndex invertedIndex;
+	private final WeightingScheme scheme;
+	private StopwordFilter stopwords;			// words of a phrase that are gaps instead of missing words, null if none
+
+	/**
+	 * @param invertedIndex - has to store the positions
+	 */
+	public PhraseQueryEngine(InvertedIndex invertedIndex) {
+		this(invertedIndex, WeightingScheme.LOG_TF_IDF);
+	}
+
+	/**
+	 * @param invertedIndex - has to store the positions
+	 * @param scheme - gives the idf of the words and the norms of the documents
+	 */
+	public PhraseQueryEngine(InvertedIndex invertedIndex, WeightingScheme scheme) {
+		if (!invertedIndex.isStorePositions())
+			throw new IllegalArgumentException("phrase queries need an index with positions");
+		this.invertedIndex = invertedIndex;
+		this.scheme = scheme;
+	}
+
+	/**
+	 * @param stopwords - the words dropped while the documents were read, null if none were dropped
+	 */
+	public void setStopwords(StopwordFilter stopwords) {
+		this.stopwords = stopwords;
+	}
+
+	/**
+	 * returns the k documents containing the words of the query in the same order one after another
+	 *
+	 * @param phrase - free text
+	 * @param k - maximum number of documents returned
+	 * @return QueryResult, the postings scored are the documents whose positions were compared
+	 */
+	public QueryResult searchPhrase(String phrase, int k) {
+		return search(phrase, 0, k);
+	}
+
+	/**
+	 * returns the k documents containing all words of the query, in any order, within a window of words
+	 *
+	 * @param query - free text
+	 * @param window - largest distance between the first and the last of the words
+	 * @param k - maximum number of documents returned
+	 * @return QueryResult, the postings scored are the documents whose positions were compared
+	 */
+	public QueryResult searchNear(String query, int window, int k) {
+		return search(query, Math.max(window, 1), k);
+	}
+
+	/**
+	 * @param window - 0 for a phrase
+	 */
+	private QueryResult search(String query, int window, int k) {
+		long start = System.nanoTime();
+		ArrayList<String> words = DocumentModel.getWords(query);
+		int[] termIds = new int[words.size()];
+		int[] offsets = new int[words.size()];				// position of the word in the phrase
+		int count = 0;
+		for (int i = 0; i < words.size(); i++) {
+			int termId = invertedIndex.getDictionary().indexOfWord(words.get(i));
+			if (termId == -1 || invertedIndex.getDocumentFrequency(termId) == 0) {
+				if (stopwords != null && stopwords.contains(words.get(i)))
+					continue;								// a gap in the phrase
+				return result(new TopKHeap(Math.max(k, 1)), start, 0);	// no document contains the word
+			}
+			termIds[count] = termId;
+			offsets[count++] = i;
+		}
+		if (count == 0)
+			return result(new TopKHeap(Math.max(k, 1)), start, 0);
+		if (window > 0)											// the order does not matter, every word once
+			count = distinct(termIds, offsets, count);
+
+		Term[] terms = new Term[count];
+		double idf = 0;
+		IdfTable table = invertedIndex.getIdfTable(scheme);
+		for (int i = 0; i < count; i++) {
+			terms[i] = new Term(invertedIndex.cursor(termIds[i]), offsets[i]);
+			idf += table.idf(termIds[i]);
+		}
+		Arrays.sort(terms, (a, b) -> Integer.compare(a.postings.size(), b.postings.size()));		// rarest first
+		double[] norms = invertedIndex.getDocumentNorms(scheme);
+
+		TopKHeap heap = new TopKHeap(Math.max(k, 1));
+		long compared = 0;
+		PostingsCursor rarest = terms[0].postings;
+		for (int docId = rarest.docId(); docId != PostingsCursor.NO_MORE_DOCS; rarest.next(), docId = rarest.docId()) {
+			boolean all = !invertedIndex.isDeleted(docId);
+			for (int t = 1; t < terms.length && all; t++)
+				all = terms[t].postings.advance(docId) == docId;
+			if (!all)
+				continue;
+			compared++;
+			int matches = window == 0 ? phraseMatches(terms) : windowMatches(terms, window);
+			if (matches > 0 && norms[docId] > 0)
+				heap.offer(docId, (1 + Math.log10(matches)) * idf / norms[docId]);
+		}
+		return result(heap, start, compared);
+	}
+
+	/**
+	 * number of positions of the rarest word at which the whole phrase starts
+	 */
+	private static int phraseMatches(Term[] terms) {
+		Term rarest = terms[0];
+		int[] positions = rarest.postings.positions();
+		int matches = 0;
+		for (int p = rarest.postings.positionStart(); p < rarest.postings.positionEnd(); p++) {
+			int phraseStart = positions[p] - rarest.offset;
+			boolean all = true;
+			for (int t = 1; t < terms.length && all; t++)
+				all = terms[t].hasPosition(phraseStart + terms[t].offset);
+			if (all)
+				matches++;
+		}
+		return matches;
+	}
+
+	/**
+	 * number of windows of at most window + 1 words holding every word, found by moving
+	 * the first of the words forward until one of them has no position left
+	 */
+	private static int windowMatches(Term[] terms, int window) {
+		int[] next = new int[terms.length];
+		for (int t = 0; t < terms.length; t++)
+			next[t] = terms[t].postings.positionStart();
+		int matches = 0;
+		while (true) {
+			int first = 0, min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int t = 0; t < terms.length; t++) {
+				int position = terms[t].postings.positions()[next[t]];
+				if (position < min) {
+					min = position;
+					first = t;
+				}
+				max = Math.max(max, position);
+			}
+			if (max - min <= window)
+				matches++;
+			if (++next[first] == terms[first].postings.positionEnd())
+				return matches;
+		}
+	}
+
+	/**
+	 * keeps the first occurrence of every term ID
+	 * @return int number of distinct term IDs
+	 */
+	private static int distinct(int[] termIds, int[] offsets, int count) {
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			int j = 0;
+			while (j < distinct && termIds[j] != termIds[i])
+				j++;
+			if (j == distinct) {
+				termIds[distinct] = termIds[i];
+				offsets[distinct++] = offsets[i];
+			}
+		}
+		return distinct;
+	}
+
+	private QueryResult result(TopKHeap heap, long start, long compared) {
+		double[] scores = new double[heap.size()];
+		int[] docIds = heap.sorted(scores);
+		String[] docNames = new String[docIds.length];
+		for (int i = 0; i < docIds.length; i++)
+			docNames[i] = invertedIndex.getDocName(docIds[i]);
+		long latency = System.nanoTime() - start;
+		MetricsRegistry.getDefault().histogram("phraseQuery.nanos").record(latency);
+		return new QueryResult(docIds, scores, docNames, latency, compared);
+	}
+
+	/**
+	 * cursor over the postings of one word of the query, pointing at the current document
+	 */
+	private static class Term {
+		final PostingsCursor postings;
+		final int offset;				// position of the word in the phrase
+
+		Term(PostingsCursor postings, int offset) {
+			this.postings = postings;
+			this.offset = offset;
+		}
+
+		/**
+		 * binary search in the ascending positions of the current document
+		 */
+		boolean hasPosition(int position) {
+			return Arrays.binarySearch(postings.positions(), postings.positionStart(), postings.positionEnd(), position) >= 0;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+
+/**
+ * walks over the postings of one word in docID order
+ *
+ * implemented by PostingsList (the uncompressed arrays) and CompressedPostings
+ * (decoded block by block), so a query does not depend on how the postings are stored.
+ * A new cursor points at the first posting. The positions of the current posting are
+ * a range of one int field shared by all postings
+ *
+ */
+public interface PostingsCursor {
+
+	/**
+	 * docID of a cursor behind the last posting, larger than every docID
+	 */
+	int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * @return int docID of the current posting, NO_MORE_DOCS behind the last one
+	 */
+	int docId();
+
+	/**
+	 * @return int term frequency of the current posting
+	 */
+	int frequency();
+
+	/**
+	 * moves to the next posting
+	 */
+	void next();
+
+	/**
+	 * moves to the first posting with a docID of at least target, never backwards
+	 *
+	 * @param target
+	 * @return int docID of that posting, NO_MORE_DOCS if there is none
+	 */
+	int advance(int target);
+
+	/**
+	 * @return int value representing the number of postings
+	 */
+	int size();
+
+	/**
+	 * @return int field with the positions of all postings in ascending order per posting,
+	 *         null if the positions are not stored
+	 */
+	int[] positions();
+
+	/**
+	 * @return int index of the first position of the current posting in positions()
+	 */
+	int positionStart();
+
+	/**
+	 * @return int index behind the last position of the current posting in positions()
+	 */
+	int positionEnd();
+}
@@ -0,0 +1,210 @@
+
+import java.util.Arrays;
+
+/**
+ * postings of one term: the documents the term occurs in, ordered by docID,
+ * with the term frequency and optionally the positions of every occurrence
+ *
+ * all values are stored in growable int fields, so a posting costs two ints
+ * (plus one int per position) instead of a String and a boxed list entry
+ *
+ */
+public class PostingsList {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	private int _size;					// number of postings (= document frequency of the term)
+	private int[] _docIds;				// docIDs in ascending order
+	private int[] _frequencies;			// term frequency at the same index as the docID
+	private int[] _positionOffsets;		// start of the positions of posting i in _positions, null if not positional
+	private int[] _positions;			// positions of all postings, one after another
+	private int _numPositions;
+
+	/**
+	 * inizializes an empty postings list
+	 *
+	 * @param storePositions - true if the positions of every occurrence should be kept
+	 */
+	public PostingsList(boolean storePositions) {
+		_docIds = new int[INITIAL_CAPACITY];
+		_frequencies = new int[INITIAL_CAPACITY];
+		if (storePositions) {
+			_positionOffsets = new int[INITIAL_CAPACITY + 1];
+			_positions = new int[INITIAL_CAPACITY];
+		}
+	}
+
+	/**
+	 * records one occurrence of the term in the document
+	 * the docIDs have to be added in ascending order, occurrences of the same
+	 * document one after another
+	 *
+	 * @param docId
+	 * @param position - position of the word in the document (ignored if not positional)
+	 */
+	public void addOccurrence(int docId, int position) {
+		if (_size == 0 || _docIds[_size - 1] != docId) {
+			if (_size > 0 && _docIds[_size - 1] > docId)
+				throw new IllegalArgumentException("docIDs have to be added in ascending order");
+			if (_size == _docIds.length) {
+				_docIds = Arrays.copyOf(_docIds, _size * 2);
+				_frequencies = Arrays.copyOf(_frequencies, _size * 2);
+				if (_positionOffsets != null)
+					_positionOffsets = Arrays.copyOf(_positionOffsets, _size * 2 + 1);
+			}
+			_docIds[_size] = docId;
+			_size++;
+		}
+		_frequencies[_size - 1]++;
+
+		if (_positionOffsets != null) {
+			if (_numPositions == _positions.length)
+				_positions = Arrays.copyOf(_positions, _numPositions * 2);
+			_positions[_numPositions++] = position;
+			_positionOffsets[_size] = _numPositions;
+		}
+	}
+
+	/**
+	 * adds the posting of a document whose occurrences were already counted
+	 *
+	 * @param docId - has to be larger than all docIDs added before
+	 * @param frequency - term frequency in the document
+	 * @param positions - field containing the positions, ignored if not positional
+	 * @param from - index of the first position of the document in positions
+	 */
+	public void addPosting(int docId, int frequency, int[] positions, int from) {
+		if (_size > 0 && _docIds[_size - 1] >= docId)
+			throw new IllegalArgumentException("docIDs have to be added in ascending order");
+		if (_positionOffsets == null) {
+			if (_size == _docIds.length) {
+				_docIds = Arrays.copyOf(_docIds, _size * 2);
+				_frequencies = Arrays.copyOf(_frequencies, _size * 2);
+			}
+			_docIds[_size] = docId;
+			_frequencies[_size++] = frequency;
+			return;
+		}
+		for (int i = 0; i < frequency; i++)
+			addOccurrence(docId, positions[from + i]);
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of documents the term occurs in
+	 */
+	public int size() {
+		return _size;
+	}
+
+	public int getDocId(int index) {
+		return _docIds[index];
+	}
+
+	public int getFrequency(int index) {
+		return _frequencies[index];
+	}
+
+	/**
+	 *
+	 * @return boolean value - true if the positions are stored
+	 */
+	public boolean hasPositions() {
+		return _positionOffsets != null;
+	}
+
+	/**
+	 *
+	 * @param index - index of the posting
+	 * @return int index of the first position of the posting in get_positions()
+	 */
+	public int getPositionStart(int index) {
+		return _positionOffsets[index];
+	}
+
+	/**
+	 *
+	 * @param index - index of the posting
+	 * @return int index behind the last position of the posting in get_positions()
+	 */
+	public int getPositionEnd(int index) {
+		return _positionOffsets[index + 1];
+	}
+
+	public int[] get_positions() {
+		return _positions;
+	}
+
+	/**
+	 * @return PostingsCursor over the uncompressed arrays
+	 */
+	public PostingsCursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * position in the arrays, advance() uses a galloping search
+	 */
+	private class Cursor implements PostingsCursor {
+		private int index;
+
+		@Override
+		public int docId() {
+			return index < _size ? _docIds[index] : NO_MORE_DOCS;
+		}
+
+		@Override
+		public int frequency() {
+			return _frequencies[index];
+		}
+
+		@Override
+		public void next() {
+			index++;
+		}
+
+		@Override
+		public int advance(int target) {
+			if (docId() >= target)
+				return docId();
+			int step = 1;
+			int low = index;
+			int high = index + 1;
+			while (high < _size && _docIds[high] < target) {
+				low = high;
+				step <<= 1;
+				high = index + step;
+			}
+			high = Math.min(high, _size);
+			while (low < high) {				// first index in (low, high] with docID >= target
+				int mid = (low + high) >>> 1;
+				if (_docIds[mid] < target)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			index = low;
+			return docId();
+		}
+
+		@Override
+		public int size() {
+			return _size;
+		}
+
+		@Override
+		public int[] positions() {
+			return _positions;
+		}
+
+		@Override
+		public int positionStart() {
+			return _positionOffsets[index];
+		}
+
+		@Override
+		public int positionEnd() {
+			return _positionOffsets[index + 1];
+		}
+	}
+}
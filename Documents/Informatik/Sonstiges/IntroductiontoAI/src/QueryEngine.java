@@ -0,0 +1,304 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * answers free-text queries with the top-k documents by cosine similarity, the query
+ * and the documents are weighted with the same WeightingScheme
+ *
+ * documents are scored term by term over the postings of the InvertedIndex
+ * (document-at-a-time). MaxScore pruning is used: every query term has an
+ * upper bound of what it can add to a score, and the terms whose bounds
+ * together cannot beat the current k-th best score are only looked up for
+ * documents found through the other terms, so most of their postings are
+ * skipped. The postings are read through PostingsCursors; with compressed
+ * postings the skipped ranges are jumped over block by block without decoding them
+ *
+ */
+public class QueryEngine {
+
+	private static final int NO_MORE_DOCS = PostingsCursor.NO_MORE_DOCS;
+
+	private final InvertedIndex invertedIndex;
+	private final WeightingScheme scheme;
+	private int generation;				// generation of the index the idf and the norms were computed for
+	private double[] idf;				// inverse document frequency at the index of the term ID
+	private double averageLength;		// average document length of the IdfTable
+	private double[] docNorm;			// euclidean length of the weighted vector of every document
+	private int[] docLength;			// number of indexed words of every document, null if the scheme does not need it
+	private int[] docMaxFrequency;		// highest term frequency of every document, null if the scheme does not need it
+	private double[] maxImpact;			// highest normalized weight of a term in any document, NaN until needed
+
+	/**
+	 * takes the idf of every word from the shared IdfTable and
+	 * the document norms from the index; the upper bound of a word is only
+	 * computed when it is part of a query, so opening a stored index stays fast
+	 *
+	 * @param invertedIndex
+	 */
+	public QueryEngine(InvertedIndex invertedIndex) {
+		this(invertedIndex, WeightingScheme.LOG_TF_IDF);
+	}
+
+	/**
+	 * @param invertedIndex
+	 * @param scheme - weights the words of the query and of the documents
+	 */
+	public QueryEngine(InvertedIndex invertedIndex, WeightingScheme scheme) {
+		this.invertedIndex = invertedIndex;
+		this.scheme = scheme;
+		refresh();
+	}
+
+	/**
+	 * recomputes the idf and takes the norms again, called lazily by search()
+	 * after documents were added to or deleted from the index
+	 */
+	private void refresh() {
+		generation = invertedIndex.getGeneration();
+		int numberOfTerms = invertedIndex.getDictionary().length();
+		IdfTable table = invertedIndex.getIdfTable(scheme);
+		idf = new double[numberOfTerms];
+		maxImpact = new double[numberOfTerms];
+		Arrays.fill(maxImpact, Double.NaN);
+		for (int t = 0; t < numberOfTerms; t++)
+			idf[t] = table.idf(t);
+		averageLength = table.getAverageLength();
+		docNorm = invertedIndex.getDocumentNorms(scheme);
+		boolean statistics = scheme.usesLength() || scheme.usesMaxFrequency();
+		docLength = statistics ? invertedIndex.getDocumentLengths() : null;
+		docMaxFrequency = statistics ? invertedIndex.getMaxFrequencies() : null;
+	}
+
+	/**
+	 * weight of a word in a query, the query is not normalized by the average document length
+	 *
+	 * @param scheme
+	 * @param frequency - number of times the word occurs in the query
+	 * @param maxFrequency - highest frequency of a word in the query
+	 * @param length - number of weighted words in the query
+	 * @param idf - idf of the word
+	 * @return double value of the weight
+	 */
+	static double queryWeight(WeightingScheme scheme, int frequency, int maxFrequency, int length, double idf) {
+		return scheme.tf(frequency, maxFrequency, length, 0) * idf;
+	}
+
+	/**
+	 * parses the query with DocumentModel.getWords and returns the k documents
+	 * with the highest cosine similarity to it
+	 *
+	 * @param query - free text
+	 * @param k - maximum number of documents returned
+	 * @return QueryResult containing the documents, the latency and the number of postings scored
+	 */
+	public QueryResult search(String query, int k) {
+		return search(DocumentModel.getWords(query), k, 0);
+	}
+
+	/**
+	 * @param words - the words of the query
+	 * @param k - maximum number of documents returned
+	 * @param maxFrequency - highest frequency of a word in the query, 0 to count it among the words
+	 *        of this index; a segment of a SegmentedIndex gets the one of the words of all segments
+	 * @return QueryResult containing the documents, the latency and the number of postings scored
+	 */
+	QueryResult search(ArrayList<String> words, int k, int maxFrequency) {
+		long start = System.nanoTime();
+		long postingsScored = 0;
+		if (generation != invertedIndex.getGeneration())
+			refresh();
+
+		Cursor[] cursors = createCursors(queryTermIds(words), maxFrequency);
+		double queryNorm = 0;
+		for (Cursor cursor : cursors)
+			queryNorm += cursor.weight * cursor.weight;
+		queryNorm = Math.sqrt(queryNorm);
+
+		Arrays.sort(cursors, (a, b) -> Double.compare(a.upperBound, b.upperBound));
+		double[] prefixBound = new double[cursors.length];		// sum of the upper bounds of cursors[0..i]
+		for (int i = 0; i < cursors.length; i++)
+			prefixBound[i] = cursors[i].upperBound + (i > 0 ? prefixBound[i - 1] : 0);
+
+		TopKHeap heap = new TopKHeap(k);
+		int firstEssential = 0;				// cursors below this index cannot make it into the top-k on their own
+		while (firstEssential < cursors.length) {
+			int doc = NO_MORE_DOCS;
+			for (int i = firstEssential; i < cursors.length; i++)
+				doc = Math.min(doc, cursors[i].doc());
+			if (doc == NO_MORE_DOCS)
+				break;
+			if (invertedIndex.isDeleted(doc)) {
+				for (int i = firstEssential; i < cursors.length; i++) {
+					if (cursors[i].doc() == doc)
+						cursors[i].next();
+				}
+				continue;
+			}
+
+			double score = 0;
+			for (int i = firstEssential; i < cursors.length; i++) {
+				if (cursors[i].doc() == doc) {
+					score += cursors[i].score();
+					postingsScored++;
+					cursors[i].next();
+				}
+			}
+			for (int i = firstEssential - 1; i >= 0; i--) {
+				if (score + prefixBound[i] <= heap.threshold())
+					break;
+				if (cursors[i].advance(doc) == doc) {
+					score += cursors[i].score();
+					postingsScored++;
+				}
+			}
+
+			if (heap.offer(doc, score)) {
+				while (heap.isFull() && firstEssential < cursors.length
+						&& prefixBound[firstEssential] <= heap.threshold())
+					firstEssential++;
+			}
+		}
+
+		double[] scores = new double[heap.size()];
+		int[] docIds = heap.sorted(scores);
+		String[] docNames = new String[docIds.length];
+		for (int i = 0; i < docIds.length; i++) {
+			scores[i] /= queryNorm;
+			docNames[i] = invertedIndex.getDocName(docIds[i]);
+		}
+		long latency = System.nanoTime() - start;
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.histogram("query.nanos").record(latency);
+		metrics.counter("query.postingsScored").add(postingsScored);
+		return new QueryResult(docIds, scores, docNames, latency, postingsScored);
+	}
+
+	/**
+	 * returns the query in a normal form: the term IDs of its words with a weight above 0
+	 * together with their frequencies, queries with the same normal form have the same result
+	 *
+	 * @param query - free text
+	 * @return String like "12x1 40x2", empty if no word of the query is in the index
+	 */
+	public String normalize(String query) {
+		if (generation != invertedIndex.getGeneration())
+			refresh();
+		int[] ids = queryTermIds(DocumentModel.getWords(query));
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < ids.length; ) {
+			int j = i;
+			while (j < ids.length && ids[j] == ids[i])
+				j++;
+			if (key.length() > 0)
+				key.append(' ');
+			key.append(ids[i]).append('x').append(j - i);
+			i = j;
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return int field with the sorted term IDs of the words with a weight above 0
+	 */
+	private int[] queryTermIds(ArrayList<String> words) {
+		int[] ids = new int[words.size()];
+		int count = 0;
+		for (String word : words) {
+			int termId = invertedIndex.getDictionary().indexOfWord(word);
+			if (termId != -1 && termId < idf.length && idf[termId] > 0)
+				ids[count++] = termId;
+		}
+		Arrays.sort(ids, 0, count);
+		return Arrays.copyOf(ids, count);
+	}
+
+	/**
+	 * counts the query words and creates a cursor for every word with a weight above 0
+	 *
+	 * @param maxFrequency - highest frequency of a word in the query, 0 to count it among ids
+	 */
+	private Cursor[] createCursors(int[] ids, int maxFrequency) {
+		int count = ids.length;
+		boolean countMax = maxFrequency <= 0;
+		for (int i = 0; i < count && countMax; ) {
+			int j = i;
+			while (j < count && ids[j] == ids[i])
+				j++;
+			maxFrequency = Math.max(maxFrequency, j - i);
+			i = j;
+		}
+		ArrayList<Cursor> cursors = new ArrayList<>();
+		for (int i = 0; i < count; ) {
+			int j = i;
+			while (j < count && ids[j] == ids[i])
+				j++;
+			double weight = queryWeight(scheme, j - i, maxFrequency, count, idf[ids[i]]);
+			cursors.add(new Cursor(ids[i], invertedIndex.cursor(ids[i]), weight));
+			i = j;
+		}
+		return cursors.toArray(new Cursor[0]);
+	}
+
+	/**
+	 * highest weight of the term in any document divided by the document norm
+	 */
+	private double maxImpact(int termId) {
+		if (Double.isNaN(maxImpact[termId])) {
+			PostingsCursor postings = invertedIndex.cursor(termId);
+			double max = 0;
+			for (int doc = postings.docId(); doc != NO_MORE_DOCS; postings.next(), doc = postings.docId()) {
+				if (!invertedIndex.isDeleted(doc))
+					max = Math.max(max, impact(termId, postings.frequency(), doc));
+			}
+			maxImpact[termId] = max;
+		}
+		return maxImpact[termId];
+	}
+
+	/**
+	 * weight of the term in the document divided by the document norm
+	 */
+	private double impact(int termId, int frequency, int docId) {
+		double tf = scheme.tf(frequency, docMaxFrequency != null ? docMaxFrequency[docId] : 0,
+				docLength != null ? docLength[docId] : 0, averageLength);
+		return tf * idf[termId] / docNorm[docId];
+	}
+
+	/**
+	 * position in the postings of one query term
+	 */
+	private class Cursor {
+		final int termId;
+		final PostingsCursor postings;
+		final double weight;			// weight of the term in the query
+		final double upperBound;		// highest score the term can add to a document
+
+		Cursor(int termId, PostingsCursor postings, double weight) {
+			this.termId = termId;
+			this.postings = postings;
+			this.weight = weight;
+			this.upperBound = weight * maxImpact(termId);
+		}
+
+		int doc() {
+			return postings.docId();
+		}
+
+		void next() {
+			postings.next();
+		}
+
+		double score() {
+			return weight * impact(termId, postings.frequency(), postings.docId());
+		}
+
+		/**
+		 * moves to the first posting with a docID of at least target
+		 * @return the docID of that posting
+		 */
+		int advance(int target) {
+			return postings.advance(target);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+
+/**
+ * result of a ranked query: the best documents ordered by descending score
+ * together with the latency and the number of postings scored
+ *
+ */
+public class QueryResult {
+
+	private final int[] _docIds;
+	private final double[] _scores;
+	private final String[] _docNames;
+	private final long _latencyNanos;
+	private final long _postingsScored;
+
+	public QueryResult(int[] docIds, double[] scores, String[] docNames, long latencyNanos, long postingsScored) {
+		_docIds = docIds;
+		_scores = scores;
+		_docNames = docNames;
+		_latencyNanos = latencyNanos;
+		_postingsScored = postingsScored;
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of documents found
+	 */
+	public int size() {
+		return _docIds.length;
+	}
+
+	public int getDocId(int rank) {
+		return _docIds[rank];
+	}
+
+	public double getScore(int rank) {
+		return _scores[rank];
+	}
+
+	public String getDocName(int rank) {
+		return _docNames[rank];
+	}
+
+	public long getLatencyNanos() {
+		return _latencyNanos;
+	}
+
+	public long getPostingsScored() {
+		return _postingsScored;
+	}
+}
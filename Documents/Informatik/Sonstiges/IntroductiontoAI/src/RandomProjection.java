@@ -0,0 +1,137 @@
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * maps the sparse tf-idf rows of a DocumentTermMatrix to dense float vectors of a fixed low dimension
+ *
+ * sparse random projection: every word is added to nonZeros of the dimensions with a
+ * random sign and the weight 1 / sqrt(nonZeros), the dimensions and signs of a word come
+ * from a hash of its term ID and the seed, so the projection matrix is never stored.
+ * Cosine similarities are kept in expectation (Johnson-Lindenstrauss); the error shrinks
+ * with the square root of the dimension. A row costs its number of words times nonZeros,
+ * the rows are projected in parallel. The vectors are normalized to length 1 and stored
+ * one after another, the layout SimilarityKernel works on
+ *
+ */
+public class RandomProjection {
+
+	private static final int ROWS_PER_TASK = 64;		// rows a task projects without splitting further
+	private static final long MAX_VALUES = Integer.MAX_VALUE - 8;	// largest array the VM allocates
+
+	private final int dimension;
+	private final int nonZeros;
+	private final long seed;
+
+	/**
+	 * @param dimension - length of the projected vectors
+	 * @param nonZeros - dimensions every word is added to, between 1 and dimension
+	 * @param seed - the same seed gives the same projection
+	 */
+	public RandomProjection(int dimension, int nonZeros, long seed) {
+		if (dimension < 1 || nonZeros < 1 || nonZeros > dimension)
+			throw new IllegalArgumentException("a projection needs 1 <= nonZeros <= dimension");
+		this.dimension = dimension;
+		this.nonZeros = nonZeros;
+		this.seed = seed;
+	}
+
+	/**
+	 * projects every row of the matrix on the pool
+	 *
+	 * @param documents - the weights of all documents
+	 * @param pool - runs the projection of the rows
+	 * @return float field with the vector of row d at d * getDimension()
+	 * @throws IllegalArgumentException - if the vectors of all rows do not fit into one array
+	 */
+	public float[] project(DocumentTermMatrix documents, ForkJoinPool pool) {
+		long values = (long) documents.rows() * dimension;
+		if (values > MAX_VALUES)
+			throw new IllegalArgumentException(documents.rows() + " documents projected to " + dimension + " dimensions have "
+					+ values + " values, more than one array holds; use a lower dimension");
+		float[] vectors = new float[(int) values];		// from here on row * dimension fits into an int
+		if (documents.rows() > 0)
+			pool.invoke(new ProjectTask(documents, vectors, 0, documents.rows()));
+		return vectors;
+	}
+
+	/**
+	 * projects one row into the vectors, normalized to length 1 (all 0 for a row without weights)
+	 *
+	 * @param row - view of the row
+	 * @param vectors - receives the vector
+	 * @param offset - index of the first component in vectors
+	 */
+	public void project(DocumentTermMatrix.View row, float[] vectors, int offset) {
+		float scale = (float) (1 / Math.sqrt(nonZeros));
+		for (int i = 0; i < row.size(); i++) {
+			float weight = row.weight(i) * scale;
+			long hash = mix(seed ^ row.termId(i));
+			for (int n = 0; n < nonZeros; n++) {
+				hash = mix(hash + n);
+				int component = (int) ((hash >>> 1) % dimension);	// every hit has its own sign, two hits of a word may cancel
+				vectors[offset + component] += (hash & 1) == 0 ? weight : -weight;
+			}
+		}
+		double sumPow = 0;
+		for (int j = 0; j < dimension; j++)
+			sumPow += vectors[offset + j] * vectors[offset + j];
+		if (sumPow > 0) {
+			float norm = (float) Math.sqrt(sumPow);
+			for (int j = 0; j < dimension; j++)
+				vectors[offset + j] /= norm;
+		}
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	public int getNonZeros() {
+		return nonZeros;
+	}
+
+	@Override
+	public String toString() {
+		return "sparse random projection to " + dimension + " dimensions, " + nonZeros + " per word";
+	}
+
+	/**
+	 * SplitMix64 finalizer, spreads the bits of the term ID and the seed
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * projects a range of rows, splits it in halves as long as it is too large
+	 */
+	private class ProjectTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final DocumentTermMatrix documents;
+		private final float[] vectors;
+		private final int from, to;
+
+		ProjectTask(DocumentTermMatrix documents, float[] vectors, int from, int to) {
+			this.documents = documents;
+			this.vectors = vectors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > ROWS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ProjectTask(documents, vectors, from, middle), new ProjectTask(documents, vectors, middle, to));
+				return;
+			}
+			DocumentTermMatrix.View view = documents.view(from);
+			for (int row = from; row < to; row++)
+				project(view.moveTo(row), vectors, row * dimension);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+
+import java.util.Arrays;
+
+/**
+ * compares a similarity matrix computed with reduced precision with the exact one
+ *
+ * besides the absolute error of the similarities it reports how much the ranking
+ * of the most similar documents changes: for every document the k most similar other
+ * documents are taken from both matrices, their overlap is averaged and the documents
+ * whose top k appear in exactly the same order are counted
+ *
+ */
+public class RankingDeviation {
+
+	private final int k;
+	private double maxError;
+	private double meanError;
+	private double overlap;				// mean share of the baseline top k found in the approximate top k
+	private int sameOrder;				// documents with an identical top k ranking
+	private int documents;
+
+	/**
+	 * @param baseline - the exact similarities
+	 * @param approximate - the similarities to compare with the baseline
+	 * @param k - number of most similar documents compared per document
+	 */
+	public RankingDeviation(SimilarityMatrix baseline, SimilarityMatrix approximate, int k) {
+		if (baseline.size() != approximate.size())
+			throw new IllegalArgumentException("matrices of size " + baseline.size() + " and " + approximate.size());
+		documents = baseline.size();
+		this.k = Math.min(k, documents - 1);
+		double errorSum = 0;
+		double overlapSum = 0;
+		for (int row = 0; row < documents; row++) {
+			for (int column = 0; column < documents; column++) {
+				double error = Math.abs(baseline.get(row, column) - approximate.get(row, column));
+				maxError = Math.max(maxError, error);
+				errorSum += error;
+			}
+			int[] expected = topK(baseline, row);
+			int[] actual = topK(approximate, row);
+			if (Arrays.equals(expected, actual))
+				sameOrder++;
+			int[] sorted = actual.clone();
+			Arrays.sort(sorted);
+			int found = 0;
+			for (int doc : expected) {
+				if (Arrays.binarySearch(sorted, doc) >= 0)
+					found++;
+			}
+			overlapSum += this.k == 0 ? 1 : (double) found / this.k;
+		}
+		meanError = documents == 0 ? 0 : errorSum / ((double) documents * documents);
+		overlap = documents == 0 ? 1 : overlapSum / documents;
+	}
+
+	/**
+	 * @return int field with the k most similar other documents of the row, ties broken by the smaller index
+	 */
+	private int[] topK(SimilarityMatrix matrix, int row) {
+		if (k < 1)
+			return new int[0];
+		TopKHeap heap = new TopKHeap(k);
+		for (int column = 0; column < documents; column++) {
+			if (column != row)
+				heap.offer(column, matrix.get(row, column));
+		}
+		return heap.sorted(new double[heap.size()]);
+	}
+
+	public double getMaxError() {
+		return maxError;
+	}
+
+	public double getMeanError() {
+		return meanError;
+	}
+
+	public double getOverlap() {
+		return overlap;
+	}
+
+	public int getSameOrder() {
+		return sameOrder;
+	}
+
+	@Override
+	public String toString() {
+		return "max error " + maxError + ", mean error " + meanError + ", top " + k + " overlap " + overlap
+				+ ", identical top " + k + " in " + sameOrder + " of " + documents + " documents";
+	}
+}
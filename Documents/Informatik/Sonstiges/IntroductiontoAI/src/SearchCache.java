@@ -0,0 +1,80 @@
+
+/**
+ * caching layer on top of an InvertedIndex for the query mode
+ *
+ * keeps the top-k results of queries, keyed by the normal form of the query
+ * (its term IDs and their frequencies, see QueryEngine.normalize) and k. The cache
+ * is bounded by weight, a result weighs its number of documents.
+ * Everything cached belongs to one generation of the index and is dropped as
+ * soon as documents are added or deleted.
+ * Document vectors are not cached: the similarity paths keep the vectors of all
+ * documents in memory anyway (the DocumentVectorModels or the off-heap
+ * DocumentTermMatrix) and walk them in order, so a bounded cache would never be hit
+ *
+ */
+public class SearchCache {
+
+	private final InvertedIndex invertedIndex;
+	private final QueryEngine queryEngine;
+	private final BoundedCache<String, QueryResult> results;
+	private int generation;				// generation of the index the cached values belong to
+
+	/**
+	 * @param invertedIndex
+	 * @param maxResultWeight - maximum number of documents of all cached results
+	 * @param scheme - weighting of the queries and the documents
+	 */
+	public SearchCache(InvertedIndex invertedIndex, long maxResultWeight, WeightingScheme scheme) {
+		this.invertedIndex = invertedIndex;
+		queryEngine = new QueryEngine(invertedIndex, scheme);
+		results = new BoundedCache<>(maxResultWeight, QueryResult::size);
+		generation = invertedIndex.getGeneration();
+	}
+
+	/**
+	 * answers the query from the cache or with the QueryEngine
+	 *
+	 * @param query - free text
+	 * @param k - maximum number of documents returned
+	 * @return QueryResult, a cached one has the latency of the lookup and 0 postings scored
+	 */
+	public synchronized QueryResult search(String query, int k) {
+		long start = System.nanoTime();
+		invalidateIfChanged();
+		String key = queryEngine.normalize(query) + '#' + k;
+		QueryResult cached = results.get(key);
+		if (cached != null) {
+			int[] docIds = new int[cached.size()];
+			double[] scores = new double[cached.size()];
+			String[] docNames = new String[cached.size()];
+			for (int rank = 0; rank < cached.size(); rank++) {
+				docIds[rank] = cached.getDocId(rank);
+				scores[rank] = cached.getScore(rank);
+				docNames[rank] = cached.getDocName(rank);
+			}
+			return new QueryResult(docIds, scores, docNames, System.nanoTime() - start, 0);
+		}
+		QueryResult result = queryEngine.search(query, k);
+		results.put(key, result);
+		return result;
+	}
+
+	/**
+	 * drops every cached value once the index has changed
+	 */
+	private void invalidateIfChanged() {
+		if (generation != invertedIndex.getGeneration()) {
+			results.clear();
+			generation = invertedIndex.getGeneration();
+		}
+	}
+
+	public BoundedCache<String, QueryResult> getResults() {
+		return results;
+	}
+
+	@Override
+	public String toString() {
+		return "results: " + results;
+	}
+}
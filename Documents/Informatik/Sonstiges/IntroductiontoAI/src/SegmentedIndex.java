@@ -0,0 +1,323 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * an index whose documents are split into independent segments built concurrently
+ *
+ * every segment reads its share of the files with its own IngestionPipeline into its
+ * own Dictionary and InvertedIndex, so the segments share no state while they are built.
+ * Afterwards the global dictionary is the sorted union of the segment dictionaries; as
+ * all dictionaries are sorted, the mapping of a local term ID to the global one keeps
+ * the order of the term IDs. The segments weight their words with the document
+ * frequencies and the average document length of all segments, and a query with the
+ * highest frequency of its words in all segments, so the scores are the ones of a
+ * single index over all files: a query is answered by every segment in parallel and the top-k lists are merged,
+ * similarities are computed over a DocumentTermMatrix with the global term IDs.
+ * Document i of segment s has the global docID docBase(s) + i
+ *
+ */
+public class SegmentedIndex {
+
+	private final Segment[] segments;
+	private final Dictionary dictionary;		// sorted union of the words of all segments
+	private final int[] documentFrequencies;	// df in all segments at the index of the global term ID
+	private final int numberOfDocuments;
+	private final WeightingScheme scheme;		// weights of the queries and documents of every segment
+	private final ArrayList<String> docNames = new ArrayList<>();
+	private final ExecutorService pool;			// one thread per segment
+
+	/**
+	 * reads the files into the given number of segments, each one gets a contiguous share of the files
+	 *
+	 * @param filenames - the list of filenames of text files
+	 * @param numberOfSegments - number of segments built at the same time
+	 * @param stopwords - words dropped while tokenizing, null to keep every word
+	 * @param storePositions - true if the positions of the words should be kept
+	 */
+	public SegmentedIndex(List<String> filenames, int numberOfSegments, StopwordFilter stopwords, boolean storePositions) {
+		this(filenames, numberOfSegments, stopwords, storePositions, WeightingScheme.LOG_TF_IDF);
+	}
+
+	/**
+	 * reads the files into the given number of segments, each one gets a contiguous share of the files
+	 *
+	 * @param filenames - the list of filenames of text files
+	 * @param numberOfSegments - number of segments built at the same time
+	 * @param stopwords - words dropped while tokenizing, null to keep every word
+	 * @param storePositions - true if the positions of the words should be kept
+	 * @param scheme - weights the queries and the documents
+	 */
+	public SegmentedIndex(List<String> filenames, int numberOfSegments, StopwordFilter stopwords, boolean storePositions,
+			WeightingScheme scheme) {
+		if (numberOfSegments < 1)
+			throw new IllegalArgumentException("at least one segment is needed");
+		this.scheme = scheme;
+		segments = new Segment[numberOfSegments];
+		pool = Executors.newFixedThreadPool(numberOfSegments);
+		int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / numberOfSegments);
+		ArrayList<Future<Segment>> builds = new ArrayList<>();
+		int docBase = 0;
+		long totalLength = 0;
+		try {
+			for (int s = 0; s < numberOfSegments; s++) {
+				List<String> share = filenames.subList(s * filenames.size() / numberOfSegments,
+						(s + 1) * filenames.size() / numberOfSegments);
+				builds.add(pool.submit(() -> {
+					long allocated = MetricsRegistry.threadAllocatedBytes();
+					try {
+						return new Segment(share, workers, stopwords, storePositions);
+					} finally {
+						MetricsRegistry.getDefault().addWorkerAllocation(allocated);
+					}
+				}));
+			}
+			for (int s = 0; s < numberOfSegments; s++) {
+				segments[s] = get(builds.get(s));
+				segments[s].docBase = docBase;
+				for (int d = 0; d < segments[s].index.getDocIdLimit(); d++)
+					docNames.add(segments[s].index.getDocName(d));
+				for (int length : segments[s].index.getDocumentLengths())
+					totalLength += length;
+				docBase += segments[s].index.getDocIdLimit();
+			}
+		} catch (RuntimeException | Error e) {
+			pool.shutdownNow();					// the threads of the pool would keep the JVM alive
+			throw e;
+		}
+		numberOfDocuments = docBase;
+		double averageLength = numberOfDocuments == 0 ? 0 : (double) totalLength / numberOfDocuments;
+
+		dictionary = new Dictionary();
+		for (Segment segment : segments) {
+			for (String word : segment.index.getDictionary().get_wordList())
+				dictionary.addWord(word);
+		}
+		dictionary.freeze();
+		documentFrequencies = new int[dictionary.length()];
+		for (Segment segment : segments) {
+			Dictionary local = segment.index.getDictionary();
+			segment.globalIds = new int[local.length()];
+			for (int t = 0; t < local.length(); t++) {
+				segment.globalIds[t] = dictionary.indexOfWord(local.getWord(t));
+				documentFrequencies[segment.globalIds[t]] += segment.index.getDocumentFrequency(t);
+			}
+		}
+		for (Segment segment : segments) {
+			int[] localFrequencies = new int[segment.globalIds.length];
+			for (int t = 0; t < localFrequencies.length; t++)
+				localFrequencies[t] = documentFrequencies[segment.globalIds[t]];
+			segment.index.setCollectionStatistics(localFrequencies, numberOfDocuments, averageLength);
+			segment.queryEngine = new QueryEngine(segment.index, scheme);
+		}
+	}
+
+	/**
+	 * asks every segment for its k best documents in parallel and merges them
+	 *
+	 * the segments weight the query words with the highest frequency of a word of all segments
+	 * and divide by the length of the query vector made of their own words, their scores are
+	 * scaled to the length of the query vector of all words
+	 *
+	 * @param query - free text
+	 * @param k - maximum number of documents returned
+	 * @return QueryResult with global docIDs and the postings scored by all segments
+	 */
+	public QueryResult search(String query, int k) {
+		long start = System.nanoTime();
+		ArrayList<String> words = DocumentModel.getWords(query);
+		int[] counts = new int[words.size()];
+		int distinct = countWords(words, null, new int[words.size()], counts);
+		int maxCount = 0;
+		for (int i = 0; i < distinct; i++)
+			maxCount = Math.max(maxCount, counts[i]);
+		int queryMaxFrequency = maxCount;
+		ArrayList<Future<QueryResult>> answers = new ArrayList<>(segments.length);
+		for (Segment segment : segments)
+			answers.add(pool.submit(() -> segment.queryEngine.search(words, k, queryMaxFrequency)));
+
+		double queryNorm = queryNorm(words, null, maxCount);
+		TopKHeap heap = new TopKHeap(k);
+		long postingsScored = 0;
+		for (int s = 0; s < segments.length; s++) {
+			QueryResult answer = get(answers.get(s));
+			double scale = queryNorm == 0 ? 0 : queryNorm(words, segments[s], maxCount) / queryNorm;
+			for (int rank = 0; rank < answer.size(); rank++)
+				heap.offer(segments[s].docBase + answer.getDocId(rank), answer.getScore(rank) * scale);
+			postingsScored += answer.getPostingsScored();
+		}
+
+		double[] scores = new double[heap.size()];
+		int[] docIds = heap.sorted(scores);
+		String[] names = new String[docIds.length];
+		for (int i = 0; i < docIds.length; i++)
+			names[i] = docNames.get(docIds[i]);
+		return new QueryResult(docIds, scores, names, System.nanoTime() - start, postingsScored);
+	}
+
+	/**
+	 * length of the tf-idf vector of the query like QueryEngine computes it
+	 *
+	 * @param words - the words of the query
+	 * @param segment - only the words of this segment count, null for the words of all segments
+	 * @param maxCount - highest frequency of a word of the query in all segments
+	 */
+	private double queryNorm(ArrayList<String> words, Segment segment, int maxCount) {
+		int[] counts = new int[words.size()];
+		int[] termIds = new int[words.size()];
+		int distinct = countWords(words, segment, termIds, counts);
+		int length = 0;
+		for (int i = 0; i < distinct; i++)
+			length += counts[i];
+		double sumPow = 0;
+		for (int i = 0; i < distinct; i++) {
+			int globalId = segment == null ? termIds[i] : segment.globalIds[termIds[i]];
+			double weight = QueryEngine.queryWeight(scheme, counts[i], maxCount, length, idf(globalId));
+			sumPow += weight * weight;
+		}
+		return Math.sqrt(sumPow);
+	}
+
+	/**
+	 * counts the distinct words of the query with a weight above 0, like QueryEngine does
+	 *
+	 * @param words - the words of the query
+	 * @param segment - only the words of this segment count, null for the words of all segments
+	 * @param termIds - receives the term IDs of the words in the order of their first occurrence
+	 * @param counts - receives the frequency of every term ID
+	 * @return int number of distinct words
+	 */
+	private int countWords(ArrayList<String> words, Segment segment, int[] termIds, int[] counts) {
+		Dictionary known = segment == null ? dictionary : segment.index.getDictionary();
+		int distinct = 0;
+		for (String word : words) {
+			int termId = known.indexOfWord(word);
+			if (termId == -1 || idf(segment == null ? termId : segment.globalIds[termId]) <= 0)
+				continue;
+			int i = 0;
+			while (i < distinct && termIds[i] != termId)
+				i++;
+			if (i == distinct)
+				termIds[distinct++] = termId;
+			counts[i]++;
+		}
+		return distinct;
+	}
+
+	/**
+	 * @return double value of the idf of the word in all segments, 0 for words in no document
+	 */
+	private double idf(int globalId) {
+		int frequency = documentFrequencies[globalId];
+		return frequency > 0 ? scheme.idf(frequency, numberOfDocuments) : 0;
+	}
+
+	/**
+	 * weights every document of every segment with the document frequencies of all segments
+	 * and copies the weights with the global term IDs into one DocumentTermMatrix
+	 *
+	 * @param scheme
+	 * @return DocumentTermMatrix with one row per global docID
+	 */
+	public DocumentTermMatrix toDocumentTermMatrix(WeightingScheme scheme) {
+		ArrayList<Future<ArrayList<DocumentVectorModel>>> weighted = new ArrayList<>(segments.length);
+		for (Segment segment : segments) {
+			weighted.add(pool.submit(() -> {
+				long allocated = MetricsRegistry.threadAllocatedBytes();
+				ArrayList<DocumentVectorModel> DVMs = new ArrayList<>(segment.documentTerms.size());
+				for (DocumentTerms documentTerms : segment.documentTerms)
+					DVMs.add(new DocumentVectorModel(documentTerms, segment.index, scheme));
+				MetricsRegistry.getDefault().addWorkerAllocation(allocated);
+				return DVMs;
+			}));
+		}
+		ArrayList<DocumentVectorModel> DVMs = new ArrayList<>(numberOfDocuments);
+		ArrayList<int[]> remaps = new ArrayList<>(numberOfDocuments);
+		for (int s = 0; s < segments.length; s++) {
+			for (DocumentVectorModel dvm : get(weighted.get(s))) {
+				DVMs.add(dvm);
+				remaps.add(segments[s].globalIds);
+			}
+		}
+		return new DocumentTermMatrix(DVMs, remaps);
+	}
+
+	/**
+	 * merges all segments into one InvertedIndex with the global dictionary and docIDs,
+	 * e.g. to write it with IndexStore
+	 *
+	 * @return InvertedIndex containing the documents of all segments
+	 */
+	public InvertedIndex merge() {
+		boolean storePositions = segments[0].index.isStorePositions();
+		InvertedIndex merged = new InvertedIndex(dictionary, storePositions);
+		for (Segment segment : segments)
+			merged.appendSegment(segment.index, segment.globalIds);
+		return merged;
+	}
+
+	/**
+	 * stops the threads of the segments
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	public int getNumberOfSegments() {
+		return segments.length;
+	}
+
+	public int getNumberOfDocuments() {
+		return numberOfDocuments;
+	}
+
+	public Dictionary getDictionary() {
+		return dictionary;
+	}
+
+	public ArrayList<String> getDocNames() {
+		return docNames;
+	}
+
+	/**
+	 * waits for the task of a segment, its exceptions are thrown again unchecked
+	 */
+	private static <T> T get(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for a segment", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("segment failed: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * documents, dictionary and index of one share of the files
+	 */
+	private static class Segment {
+		final InvertedIndex index;
+		final ArrayList<DocumentTerms> documentTerms;	// with local term IDs
+		int docBase;									// global docID of the first document
+		int[] globalIds;								// global term ID at the index of the local one
+		QueryEngine queryEngine;
+
+		Segment(List<String> filenames, int workers, StopwordFilter stopwords, boolean storePositions) {
+			Dictionary dictionary = new Dictionary();
+			IngestionPipeline pipeline = new IngestionPipeline(dictionary, workers, storePositions);
+			pipeline.setStopwords(stopwords);
+			documentTerms = pipeline.run(filenames);
+			int[] remap = dictionary.freeze();
+			index = new InvertedIndex(dictionary, storePositions);
+			for (DocumentTerms terms : documentTerms) {
+				terms.remap(remap);
+				index.addDocument(terms);
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * computes the cosine similarity of every pair of DocumentVectorModels in parallel
+ *
+ * only the upper triangle of the matrix is computed. It is split into square
+ * tiles of TILE_SIZE x TILE_SIZE documents, so the vectors of one tile stay in
+ * the cache while they are compared with each other, and the tiles are run on
+ * a ForkJoinPool. The norms are read once before the computation starts.
+ * The rows of an off-heap DocumentTermMatrix are compared the same way without
+ * allocating anything on the heap besides the result.
+ * stream() does not build a matrix: blocks of ROWS_PER_BLOCK documents are compared
+ * with all others in parallel and their neighbours above a threshold, or their
+ * k nearest neighbours, are handed to a SimilarityWriter before the next block starts.
+ * With a SimilarityJoin the rows only meet the documents they share a word with.
+ * Dense vectors, e.g. of a RandomProjection, are compared with the SimilarityKernel.
+ * The tasks add the bytes they allocate to the running stage of the MetricsRegistry
+ *
+ */
+public class SimilarityEngine {
+
+	private static final int TILE_SIZE = 64;			// documents per tile side
+	private static final int TILES_PER_TASK = 4;		// tiles a task computes without splitting further
+	private static final int ROWS_PER_BLOCK = 256;		// documents whose neighbours are kept in memory by stream()
+	private static final int ROWS_PER_TASK = 8;			// rows a task of stream() computes without splitting further
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * uses one worker per available processor
+	 */
+	public SimilarityEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism - number of worker threads
+	 */
+	public SimilarityEngine(int parallelism) {
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * calculates the Cosine Similarity of every DocumentVectorModel with every DocumentVectorModel
+	 *
+	 * @param DVMs - List containing the DocumentVectorModels
+	 * @return SimilarityMatrix containing all computed Cosine Similarities
+	 */
+	public SimilarityMatrix compute(List<DocumentVectorModel> DVMs) {
+		return compute(DVMs.size(), pairwise(DVMs));
+	}
+
+	/**
+	 * Cosine Similarity of the DocumentVectorModels with the norms read once. Reading the norms
+	 * computes the weights on the calling thread, the tasks only read the stored weights and never
+	 * recompute them, even if the index changes during the computation
+	 */
+	private static Pairwise pairwise(List<DocumentVectorModel> DVMs) {
+		DocumentVectorModel[] vectors = DVMs.toArray(new DocumentVectorModel[0]);
+		double[] norms = new double[vectors.length];
+		for (int i = 0; i < vectors.length; i++)
+			norms[i] = vectors[i].getNorm();
+		return (i, j) -> {
+			if (norms[i] == 0.0 || norms[j] == 0.0)
+				return 0;
+			return DocumentVectorModel.storedDotProduct(vectors[i], vectors[j]) / (norms[i] * norms[j]);
+		};
+	}
+
+	/**
+	 * writes the similar documents of every DocumentVectorModel without building the matrix
+	 *
+	 * @param DVMs - List containing the DocumentVectorModels
+	 * @param threshold - minimum similarity of a written pair
+	 * @param k - number of nearest neighbours written per document, 0 to write every pair
+	 *            above the threshold once (with the smaller docID first); pairs with similarity 0 are never written
+	 * @param writer - receives the neighbours row by row
+	 * @throws IOException - if the writer fails
+	 */
+	public void stream(List<DocumentVectorModel> DVMs, double threshold, int k, SimilarityWriter writer) throws IOException {
+		stream(DVMs.size(), pairwise(DVMs), threshold, k, writer);
+	}
+
+	/**
+	 * writes the similar documents of every row of the matrix without building the similarity matrix
+	 *
+	 * @param documents - the off-heap document-term matrix
+	 * @param threshold - minimum similarity of a written pair
+	 * @param k - number of nearest neighbours written per document, 0 to write every pair above the threshold once
+	 * @param writer - receives the neighbours row by row
+	 * @throws IOException - if the writer fails
+	 */
+	public void stream(DocumentTermMatrix documents, double threshold, int k, SimilarityWriter writer) throws IOException {
+		stream(documents.rows(), documents::cosineSimilarity, threshold, k, writer);
+	}
+
+	/**
+	 * writes the similar documents found by the join without building the matrix
+	 *
+	 * @param join - the impact lists of all documents, its threshold is the minimum similarity of a written pair
+	 * @param k - number of nearest neighbours written per document, 0 to write every pair above the threshold once
+	 * @param writer - receives the neighbours row by row
+	 * @throws IOException - if the writer fails
+	 */
+	public void stream(SimilarityJoin join, int k, SimilarityWriter writer) throws IOException {
+		stream(join.rows(), join::neighbours, join.getThreshold(), k, writer);
+	}
+
+	private void stream(int size, Pairwise similarity, double threshold, int k, SimilarityWriter writer) throws IOException {
+		stream(size, neighbourhood(size, similarity, threshold), threshold, k, writer);
+	}
+
+	private void stream(int size, Neighbourhood neighbourhood, double threshold, int k, SimilarityWriter writer) throws IOException {
+		int[][] neighbours = new int[ROWS_PER_BLOCK][];
+		float[][] similarities = new float[ROWS_PER_BLOCK][];
+		int[] counts = new int[ROWS_PER_BLOCK];
+		for (int blockStart = 0; blockStart < size; blockStart += ROWS_PER_BLOCK) {
+			int blockEnd = Math.min(blockStart + ROWS_PER_BLOCK, size);
+			pool.invoke(new RowTask(neighbourhood, k, blockStart, neighbours, similarities, counts, blockStart, blockEnd));
+			for (int row = blockStart; row < blockEnd; row++)
+				writer.writeRow(row, neighbours[row - blockStart], similarities[row - blockStart], counts[row - blockStart]);
+		}
+	}
+
+	/**
+	 * compares a row with every document from fromDocId on
+	 */
+	private static Neighbourhood neighbourhood(int size, Pairwise similarity, double threshold) {
+		return (row, fromDocId, consumer) -> {
+			for (int column = fromDocId; column < size; column++) {
+				if (column == row)
+					continue;
+				double value = similarity.similarity(row, column);
+				if (value >= threshold && value > 0)
+					consumer.accept(column, value);
+			}
+		};
+	}
+
+	/**
+	 * calculates the Cosine Similarity of every row of the matrix with every row
+	 *
+	 * @param documents - the off-heap document-term matrix
+	 * @return SimilarityMatrix containing all computed Cosine Similarities
+	 */
+	public SimilarityMatrix compute(DocumentTermMatrix documents) {
+		return compute(documents.rows(), documents::cosineSimilarity);
+	}
+
+	/**
+	 * calculates the Cosine Similarity of every dense vector with every dense vector
+	 *
+	 * @param vectors - vectors of the same dimension one after another
+	 * @param dimension - length of every vector
+	 * @return SimilarityMatrix containing all computed Cosine Similarities
+	 */
+	public SimilarityMatrix compute(float[] vectors, int dimension) {
+		return compute(vectors.length / dimension, dense(vectors, dimension));
+	}
+
+	/**
+	 * writes the similar documents of every dense vector without building the matrix,
+	 * with k above 0 an approximate nearest neighbour search if the vectors are projected
+	 *
+	 * @param vectors - vectors of the same dimension one after another
+	 * @param dimension - length of every vector
+	 * @param threshold - minimum similarity of a written pair
+	 * @param k - number of nearest neighbours written per document, 0 to write every pair above the threshold once
+	 * @param writer - receives the neighbours row by row
+	 * @throws IOException - if the writer fails
+	 */
+	public void stream(float[] vectors, int dimension, double threshold, int k, SimilarityWriter writer) throws IOException {
+		stream(vectors.length / dimension, dense(vectors, dimension), threshold, k, writer);
+	}
+
+	/**
+	 * Cosine Similarity of the dense vectors
+	 */
+	private static Pairwise dense(float[] vectors, int dimension) {
+		return (i, j) -> SimilarityKernel.cosineSimilarity(vectors, i * dimension, vectors, j * dimension, dimension);
+	}
+
+	/**
+	 * builds the matrix from the pairs found by the join, the pairs without a common word stay 0
+	 *
+	 * @param join - the impact lists of all documents, pairs below its threshold stay 0
+	 * @return SimilarityMatrix containing the Cosine Similarities
+	 */
+	public SimilarityMatrix compute(SimilarityJoin join) {
+		int size = join.rows();
+		SimilarityMatrix matrix = new SimilarityMatrix(size);
+		int[][] neighbours = new int[ROWS_PER_BLOCK][];
+		float[][] similarities = new float[ROWS_PER_BLOCK][];
+		int[] counts = new int[ROWS_PER_BLOCK];
+		for (int blockStart = 0; blockStart < size; blockStart += ROWS_PER_BLOCK) {
+			int blockEnd = Math.min(blockStart + ROWS_PER_BLOCK, size);
+			pool.invoke(new RowTask(join::neighbours, 0, blockStart, neighbours, similarities, counts, blockStart, blockEnd));
+			for (int row = blockStart; row < blockEnd; row++) {
+				matrix.set(row, row, join.isEmpty(row) ? 0 : 1);
+				for (int i = 0; i < counts[row - blockStart]; i++)
+					matrix.set(row, neighbours[row - blockStart][i], similarities[row - blockStart][i]);
+			}
+		}
+		return matrix;
+	}
+
+	private SimilarityMatrix compute(int size, Pairwise similarity) {
+		int tiles = (size + TILE_SIZE - 1) / TILE_SIZE;
+		int[] tileRows = new int[tiles * (tiles + 1) / 2];		// every tile (row, column) with row <= column
+		int[] tileColumns = new int[tileRows.length];
+		int count = 0;
+		for (int row = 0; row < tiles; row++) {
+			for (int column = row; column < tiles; column++) {
+				tileRows[count] = row;
+				tileColumns[count++] = column;
+			}
+		}
+
+		SimilarityMatrix matrix = new SimilarityMatrix(size);
+		pool.invoke(new TileTask(similarity, matrix, tileRows, tileColumns, 0, count));
+		return matrix;
+	}
+
+	/**
+	 * stops the worker threads
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Cosine Similarity of the documents i and j, i != j
+	 */
+	private interface Pairwise {
+		double similarity(int i, int j);
+	}
+
+	/**
+	 * hands the documents from fromDocId on which are similar enough to the row to the consumer, ascending
+	 */
+	private interface Neighbourhood {
+		void neighbours(int row, int fromDocId, SimilarityJoin.NeighbourConsumer consumer);
+	}
+
+	/**
+	 * finds the neighbours of a range of rows of the current block, splits it in halves as long as it is too large
+	 */
+	private static class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Neighbourhood neighbourhood;
+		private final int k;
+		private final int blockStart;
+		private final int[][] neighbours;
+		private final float[][] similarities;
+		private final int[] counts;
+		private final int from, to;
+
+		RowTask(Neighbourhood neighbourhood, int k, int blockStart, int[][] neighbours, float[][] similarities,
+				int[] counts, int from, int to) {
+			this.neighbourhood = neighbourhood;
+			this.k = k;
+			this.blockStart = blockStart;
+			this.neighbours = neighbours;
+			this.similarities = similarities;
+			this.counts = counts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > ROWS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RowTask(neighbourhood, k, blockStart, neighbours, similarities, counts, from, middle),
+						new RowTask(neighbourhood, k, blockStart, neighbours, similarities, counts, middle, to));
+				return;
+			}
+			long allocated = MetricsRegistry.threadAllocatedBytes();
+			for (int row = from; row < to; row++) {
+				if (k > 0)
+					nearestNeighbours(row);
+				else
+					pairsAboveThreshold(row);
+			}
+			MetricsRegistry.getDefault().addWorkerAllocation(allocated);
+		}
+
+		/**
+		 * the k most similar other documents with at least the threshold, best first
+		 */
+		private void nearestNeighbours(int row) {
+			TopKHeap heap = new TopKHeap(k);
+			neighbourhood.neighbours(row, 0, heap::offer);
+			double[] scores = new double[heap.size()];
+			int[] docIds = heap.sorted(scores);
+			float[] values = new float[docIds.length];
+			for (int i = 0; i < values.length; i++)
+				values[i] = (float) scores[i];
+			neighbours[row - blockStart] = docIds;
+			similarities[row - blockStart] = values;
+			counts[row - blockStart] = docIds.length;
+		}
+
+		/**
+		 * the documents with a larger docID and at least the threshold
+		 */
+		private void pairsAboveThreshold(int row) {
+			int slot = row - blockStart;
+			neighbours[slot] = new int[16];
+			similarities[slot] = new float[16];
+			counts[slot] = 0;
+			neighbourhood.neighbours(row, row + 1, (column, value) -> {
+				int count = counts[slot];
+				if (count == neighbours[slot].length) {
+					neighbours[slot] = Arrays.copyOf(neighbours[slot], count * 2);
+					similarities[slot] = Arrays.copyOf(similarities[slot], count * 2);
+				}
+				neighbours[slot][count] = column;
+				similarities[slot][count] = (float) value;
+				counts[slot] = count + 1;
+			});
+		}
+	}
+
+	/**
+	 * computes a range of tiles, splits it in halves as long as it is too large
+	 */
+	private static class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Pairwise similarity;
+		private final SimilarityMatrix matrix;
+		private final int[] tileRows, tileColumns;
+		private final int from, to;
+
+		TileTask(Pairwise similarity, SimilarityMatrix matrix, int[] tileRows, int[] tileColumns, int from, int to) {
+			this.similarity = similarity;
+			this.matrix = matrix;
+			this.tileRows = tileRows;
+			this.tileColumns = tileColumns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TILES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TileTask(similarity, matrix, tileRows, tileColumns, from, middle),
+						new TileTask(similarity, matrix, tileRows, tileColumns, middle, to));
+				return;
+			}
+			long allocated = MetricsRegistry.threadAllocatedBytes();
+			for (int t = from; t < to; t++)
+				computeTile(tileRows[t] * TILE_SIZE, tileColumns[t] * TILE_SIZE);
+			MetricsRegistry.getDefault().addWorkerAllocation(allocated);
+		}
+
+		private void computeTile(int rowStart, int columnStart) {
+			int size = matrix.size();
+			int rowEnd = Math.min(rowStart + TILE_SIZE, size);
+			int columnEnd = Math.min(columnStart + TILE_SIZE, size);
+			for (int i = rowStart; i < rowEnd; i++) {
+				for (int j = Math.max(columnStart, i); j < columnEnd; j++) {
+					if (i == j)			// 1, or 0 for a document without weights
+						matrix.set(i, j, similarity.similarity(i, i) == 0.0 ? 0 : 1);
+					else
+						matrix.set(i, j, (float) similarity.similarity(i, j));
+				}
+			}
+		}
+	}
+}
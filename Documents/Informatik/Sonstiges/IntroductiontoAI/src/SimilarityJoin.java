@@ -0,0 +1,267 @@
+
+import java.util.Arrays;
+
+/**
+ * finds the similar documents of a document through postings instead of comparing it with every document
+ *
+ * the rows of a DocumentTermMatrix are normalized to length 1 and inverted into impact
+ * lists: the list of a word holds the docIDs (ascending) and normalized weights of the
+ * documents containing it. A document walks the lists of its words and adds the products
+ * into an accumulator, so only documents sharing at least one word are ever touched and
+ * the cost grows with the number of overlapping pairs instead of N^2.
+ * Prefix filtering (All-Pairs): the words of every row are ordered from the most to the
+ * least frequent one, and the leading words whose weight times the highest weight of the
+ * word in any document sums up to less than the threshold are left out of the lists.
+ * Those words alone cannot reach the threshold, so every pair above it is still found
+ * through the remaining words; the left-out part is only added for the candidates whose
+ * score plus its length can still reach the threshold
+ *
+ */
+public class SimilarityJoin {
+
+	private final int _rows;
+	private final double _threshold;
+	private final int[] _rowOffsets;		// row d owns the entries _rowOffsets[d] .. _rowOffsets[d + 1] - 1
+	private final int[] _rowRanks;			// rank of the word, 0 for the most frequent one; ascending within a row
+	private final int[] _rowTerms;
+	private final float[] _rowWeights;		// weights divided by the norm of the row
+	private final int[] _prefixEnds;		// the entries of row d before _prefixEnds[d] are not in the lists
+	private final float[] _prefixLengths;	// euclidean length of the left-out entries of every row
+	private final int[] _listOffsets;		// the list of term t: _listOffsets[t] .. _listOffsets[t + 1] - 1
+	private final int[] _listDocIds;
+	private final float[] _listWeights;
+	private final ThreadLocal<Accumulator> accumulators;
+
+	/**
+	 * builds the impact lists, the threshold decides how many words of a row can be left out
+	 *
+	 * @param documents - the weights of all documents
+	 * @param threshold - minimum similarity of a pair to be found, 0 to find every pair sharing a word
+	 */
+	public SimilarityJoin(DocumentTermMatrix documents, double threshold) {
+		_rows = documents.rows();
+		_threshold = threshold;
+		DocumentTermMatrix.View view = documents.view(0);
+		int numberOfTerms = 0;
+		for (int d = 0; d < _rows; d++) {
+			view.moveTo(d);
+			for (int i = 0; i < view.size(); i++)
+				numberOfTerms = Math.max(numberOfTerms, view.termId(i) + 1);
+		}
+		int[] documentFrequencies = new int[numberOfTerms];
+		float[] maxWeights = new float[numberOfTerms];
+		for (int d = 0; d < _rows; d++) {
+			view.moveTo(d);
+			for (int i = 0; i < view.size(); i++) {
+				int termId = view.termId(i);
+				documentFrequencies[termId]++;
+				if (view.weight(i) > 0)
+					maxWeights[termId] = Math.max(maxWeights[termId], view.weight(i) / view.getNorm());
+			}
+		}
+		Integer[] order = new Integer[numberOfTerms];
+		for (int t = 0; t < numberOfTerms; t++)
+			order[t] = t;
+		Arrays.sort(order, (a, b) -> documentFrequencies[a] != documentFrequencies[b]
+				? Integer.compare(documentFrequencies[b], documentFrequencies[a]) : Integer.compare(a, b));
+		int[] ranks = new int[numberOfTerms];
+		for (int r = 0; r < numberOfTerms; r++)
+			ranks[order[r]] = r;
+
+		_rowOffsets = new int[_rows + 1];
+		_rowRanks = new int[documents.entries()];
+		_rowTerms = new int[documents.entries()];
+		_rowWeights = new float[documents.entries()];
+		_prefixEnds = new int[_rows];
+		_prefixLengths = new float[_rows];
+		int[] listSizes = new int[numberOfTerms + 1];
+		int offset = 0;
+		for (int d = 0; d < _rows; d++) {
+			view.moveTo(d);
+			_rowOffsets[d] = offset;
+			long[] keys = new long[view.size()];		// rank in the high bits, index in the row in the low bits
+			int count = 0;
+			for (int i = 0; i < view.size(); i++) {
+				if (view.weight(i) > 0)
+					keys[count++] = (long) ranks[view.termId(i)] << 32 | i;
+			}
+			Arrays.sort(keys, 0, count);
+			double bound = 0, prefixSumPow = 0;
+			int prefixEnd = offset;
+			for (int i = 0; i < count; i++) {
+				int index = (int) keys[i];
+				int termId = view.termId(index);
+				float weight = view.weight(index) / view.getNorm();
+				_rowRanks[offset + i] = (int) (keys[i] >>> 32);
+				_rowTerms[offset + i] = termId;
+				_rowWeights[offset + i] = weight;
+				bound += weight * maxWeights[termId];
+				if (prefixEnd == offset + i && threshold > 0 && bound < threshold * (1 - 1e-6)) {
+					prefixEnd++;
+					prefixSumPow += weight * weight;
+				}
+				else
+					listSizes[termId + 1]++;
+			}
+			_prefixEnds[d] = prefixEnd;
+			_prefixLengths[d] = (float) Math.sqrt(prefixSumPow);
+			offset += count;
+		}
+		_rowOffsets[_rows] = offset;
+
+		_listOffsets = new int[numberOfTerms + 1];
+		for (int t = 0; t < numberOfTerms; t++)
+			_listOffsets[t + 1] = _listOffsets[t] + listSizes[t + 1];
+		_listDocIds = new int[_listOffsets[numberOfTerms]];
+		_listWeights = new float[_listDocIds.length];
+		int[] next = Arrays.copyOf(_listOffsets, numberOfTerms);
+		for (int d = 0; d < _rows; d++) {						// in docID order, so every list is ascending
+			for (int i = _prefixEnds[d]; i < _rowOffsets[d + 1]; i++) {
+				int position = next[_rowTerms[i]]++;
+				_listDocIds[position] = d;
+				_listWeights[position] = _rowWeights[i];
+			}
+		}
+		accumulators = ThreadLocal.withInitial(() -> new Accumulator(_rows));
+	}
+
+	/**
+	 * receives the similar documents of a row
+	 */
+	public interface NeighbourConsumer {
+		void accept(int docId, double similarity);
+	}
+
+	/**
+	 * hands every other document with a similarity of at least the threshold and above 0
+	 * to the consumer, in ascending docID order; may be called from several threads at once
+	 *
+	 * @param row - docID of the document
+	 * @param fromDocId - documents with a smaller docID are skipped, e.g. row + 1 to find every pair once
+	 * @param consumer
+	 */
+	public void neighbours(int row, int fromDocId, NeighbourConsumer consumer) {
+		Accumulator accumulator = accumulators.get();
+		double[] scores = accumulator.scores;
+		int[] touched = accumulator.touched;
+		int count = 0;
+		for (int i = _rowOffsets[row]; i < _rowOffsets[row + 1]; i++) {
+			int termId = _rowTerms[i];
+			if (termId + 1 >= _listOffsets.length)
+				continue;
+			float weight = _rowWeights[i];
+			int end = _listOffsets[termId + 1];
+			for (int j = firstAtLeast(_listOffsets[termId], end, fromDocId); j < end; j++) {
+				int docId = _listDocIds[j];
+				if (docId == row)
+					continue;
+				if (scores[docId] == 0)
+					touched[count++] = docId;
+				scores[docId] += weight * _listWeights[j];
+			}
+		}
+
+		Arrays.sort(touched, 0, count);
+		int found = 0;
+		for (int c = 0; c < count; c++) {
+			int docId = touched[c];
+			double score = scores[docId];
+			scores[docId] = 0;
+			if (_prefixEnds[docId] > _rowOffsets[docId]) {		// add the left-out words if they can still matter
+				if (score + _prefixLengths[docId] < _threshold)
+					continue;
+				score += prefixProduct(row, docId);
+			}
+			if (score >= _threshold && score > 0) {
+				consumer.accept(docId, score);
+				found++;
+			}
+		}
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		metrics.counter("join.candidates").add(count);
+		metrics.counter("join.pairs").add(found);
+	}
+
+	/**
+	 * @return the first index in from .. end - 1 of a list with at least the docID, end if there is none
+	 */
+	private int firstAtLeast(int from, int end, int docId) {
+		if (docId <= 0 || from == end || _listDocIds[from] >= docId)
+			return from;
+		int low = from, high = end;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (_listDocIds[middle] < docId)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * product of the row with the left-out words of the document, both are ordered by rank
+	 */
+	private double prefixProduct(int row, int docId) {
+		int i = _rowOffsets[row], end1 = _rowOffsets[row + 1];
+		int j = _rowOffsets[docId], end2 = _prefixEnds[docId];
+		double sumproduct = 0;
+		while (i < end1 && j < end2) {
+			if (_rowRanks[i] < _rowRanks[j])
+				i++;
+			else if (_rowRanks[i] > _rowRanks[j])
+				j++;
+			else
+				sumproduct += _rowWeights[i++] * _rowWeights[j++];
+		}
+		return sumproduct;
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of documents
+	 */
+	public int rows() {
+		return _rows;
+	}
+
+	public double getThreshold() {
+		return _threshold;
+	}
+
+	/**
+	 * @return true if the row has no weights, its similarity to itself is 0 then
+	 */
+	public boolean isEmpty(int row) {
+		return _rowOffsets[row] == _rowOffsets[row + 1];
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of weights in the lists, the left-out ones are not counted
+	 */
+	public int getIndexedEntries() {
+		return _listDocIds.length;
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of weights of all rows
+	 */
+	public int getEntries() {
+		return _rowOffsets[_rows];
+	}
+
+	/**
+	 * scores of the documents touched by the row of one thread, all 0 between two rows
+	 */
+	private static class Accumulator {
+		final double[] scores;
+		final int[] touched;
+
+		Accumulator(int rows) {
+			scores = new double[rows];
+			touched = new int[rows];
+		}
+	}
+}
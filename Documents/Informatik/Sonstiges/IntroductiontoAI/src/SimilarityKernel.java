@@ -0,0 +1,138 @@
+
+import java.util.Arrays;
+
+/**
+ * cosine similarity of dense float vectors, e.g. DocumentVectorModels over a reduced vocabulary
+ *
+ * the dot product and both norms are computed in one pass over the arrays. The loop
+ * is unrolled by LANES with independent accumulators, so the additions of the lanes do
+ * not wait for each other and the JIT can keep them in registers; the remaining
+ * elements are done by the scalar loop. Several vectors are stored one after
+ * another in one float field (a block), so a query can be scored against all of
+ * them in a single sequential pass over the memory; the norm of the query is only
+ * computed once for the whole block
+ *
+ */
+public class SimilarityKernel {
+
+	static final int LANES = 8;			// elements processed per iteration of the unrolled loop
+
+	/**
+	 * @param a
+	 * @param b - vector with the same length as a
+	 * @return double value of the Cosine Similarity, 0 if one of the vectors is zero
+	 */
+	public static double cosineSimilarity(float[] a, float[] b) {
+		if (a.length != b.length)
+			throw new IllegalArgumentException("vectors of length " + a.length + " and " + b.length);
+		return cosineSimilarity(a, 0, b, 0, a.length);
+	}
+
+	/**
+	 * computes the Cosine Similarity of two vectors stored in parts of float fields
+	 *
+	 * @param a
+	 * @param aOffset - start of the first vector in a
+	 * @param b
+	 * @param bOffset - start of the second vector in b
+	 * @param dimension - length of both vectors
+	 * @return double value of the Cosine Similarity, 0 if one of the vectors is zero
+	 */
+	public static double cosineSimilarity(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+		float dot0 = 0, dot1 = 0, dot2 = 0, dot3 = 0;
+		float aa0 = 0, aa1 = 0, aa2 = 0, aa3 = 0;
+		float bb0 = 0, bb1 = 0, bb2 = 0, bb3 = 0;
+		int i = 0;
+		for (int bound = dimension - LANES + 1; i < bound; i += LANES) {
+			float a0 = a[aOffset + i], a1 = a[aOffset + i + 1], a2 = a[aOffset + i + 2], a3 = a[aOffset + i + 3];
+			float a4 = a[aOffset + i + 4], a5 = a[aOffset + i + 5], a6 = a[aOffset + i + 6], a7 = a[aOffset + i + 7];
+			float b0 = b[bOffset + i], b1 = b[bOffset + i + 1], b2 = b[bOffset + i + 2], b3 = b[bOffset + i + 3];
+			float b4 = b[bOffset + i + 4], b5 = b[bOffset + i + 5], b6 = b[bOffset + i + 6], b7 = b[bOffset + i + 7];
+			dot0 += a0 * b0 + a4 * b4;
+			dot1 += a1 * b1 + a5 * b5;
+			dot2 += a2 * b2 + a6 * b6;
+			dot3 += a3 * b3 + a7 * b7;
+			aa0 += a0 * a0 + a4 * a4;
+			aa1 += a1 * a1 + a5 * a5;
+			aa2 += a2 * a2 + a6 * a6;
+			aa3 += a3 * a3 + a7 * a7;
+			bb0 += b0 * b0 + b4 * b4;
+			bb1 += b1 * b1 + b5 * b5;
+			bb2 += b2 * b2 + b6 * b6;
+			bb3 += b3 * b3 + b7 * b7;
+		}
+		double dot = (dot0 + dot1) + (dot2 + dot3);
+		double normA = (aa0 + aa1) + (aa2 + aa3);
+		double normB = (bb0 + bb1) + (bb2 + bb3);
+		for (; i < dimension; i++) {
+			float x = a[aOffset + i], y = b[bOffset + i];
+			dot += x * y;
+			normA += x * x;
+			normB += y * y;
+		}
+		if (normA == 0.0 || normB == 0.0)
+			return 0;
+		return dot / Math.sqrt(normA * normB);
+	}
+
+	/**
+	 * computes the Cosine Similarity of the query with every vector of the block
+	 *
+	 * @param query - vector of length dimension
+	 * @param block - count vectors of length dimension one after another
+	 * @param count - number of vectors in the block
+	 * @param dimension
+	 * @param similarities - receives the similarity with vector i at index i
+	 */
+	public static void cosineSimilarities(float[] query, float[] block, int count, int dimension, float[] similarities) {
+		if (query.length < dimension || block.length < (long) count * dimension || similarities.length < count)
+			throw new IllegalArgumentException("block of " + count + " vectors does not fit dimension " + dimension);
+		double queryNorm = dotAndNorm(query, query, 0, dimension, new double[2]);
+		if (queryNorm == 0.0) {
+			Arrays.fill(similarities, 0, count, 0);
+			return;
+		}
+		double[] vectorNorm = new double[1];
+		for (int v = 0; v < count; v++) {
+			double dot = dotAndNorm(query, block, v * dimension, dimension, vectorNorm);
+			similarities[v] = vectorNorm[0] == 0.0 ? 0 : (float) (dot / Math.sqrt(queryNorm * vectorNorm[0]));
+		}
+	}
+
+	/**
+	 * computes the dot product of the query with one vector of the block and the squared norm of that vector
+	 *
+	 * @param query - vector starting at 0
+	 * @param block
+	 * @param offset - start of the vector in block
+	 * @param dimension - length of both vectors
+	 * @param norm - receives the squared norm of the vector at index 0
+	 * @return double value of the dot product
+	 */
+	private static double dotAndNorm(float[] query, float[] block, int offset, int dimension, double[] norm) {
+		float dot0 = 0, dot1 = 0, dot2 = 0, dot3 = 0;
+		float bb0 = 0, bb1 = 0, bb2 = 0, bb3 = 0;
+		int i = 0;
+		for (int bound = dimension - LANES + 1; i < bound; i += LANES) {
+			float b0 = block[offset + i], b1 = block[offset + i + 1], b2 = block[offset + i + 2], b3 = block[offset + i + 3];
+			float b4 = block[offset + i + 4], b5 = block[offset + i + 5], b6 = block[offset + i + 6], b7 = block[offset + i + 7];
+			dot0 += query[i] * b0 + query[i + 4] * b4;
+			dot1 += query[i + 1] * b1 + query[i + 5] * b5;
+			dot2 += query[i + 2] * b2 + query[i + 6] * b6;
+			dot3 += query[i + 3] * b3 + query[i + 7] * b7;
+			bb0 += b0 * b0 + b4 * b4;
+			bb1 += b1 * b1 + b5 * b5;
+			bb2 += b2 * b2 + b6 * b6;
+			bb3 += b3 * b3 + b7 * b7;
+		}
+		double dot = (dot0 + dot1) + (dot2 + dot3);
+		double normB = (bb0 + bb1) + (bb2 + bb3);
+		for (; i < dimension; i++) {
+			float y = block[offset + i];
+			dot += query[i] * y;
+			normB += y * y;
+		}
+		norm[0] = normB;
+		return dot;
+	}
+}
@@ -0,0 +1,59 @@
+
+/**
+ * symmetric document-document matrix holding the raw cosine similarities
+ * as floats, formatting is only done when printing
+ *
+ * only the upper triangle including the diagonal is stored, row after row in one field;
+ * the offsets are computed in long, so a matrix fails with a clear message instead of
+ * overflowing when it does not fit into one array
+ *
+ */
+public class SimilarityMatrix {
+
+	private static final long MAX_VALUES = Integer.MAX_VALUE - 8;	// largest array the VM allocates
+
+	private final int _size;
+	private final float[] _values;
+
+	/**
+	 * @param size - number of documents
+	 */
+	public SimilarityMatrix(int size) {
+		long values = (long) size * (size + 1) / 2;
+		if (values > MAX_VALUES)
+			throw new IllegalArgumentException("a similarity matrix of " + size + " documents has " + values
+					+ " values, more than one array holds; stream the similar pairs to a file instead");
+		_size = size;
+		_values = new float[(int) values];
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public float get(int row, int column) {
+		return _values[index(row, column)];
+	}
+
+	/**
+	 * sets the similarity of both (row, column) and (column, row)
+	 */
+	public void set(int row, int column, float value) {
+		_values[index(row, column)] = value;
+	}
+
+	/**
+	 * index of the value in the upper triangle, rows start after the (row * (row - 1)) / 2 values left out above them
+	 */
+	private int index(int row, int column) {
+		if (row > column) {
+			int swap = row;
+			row = column;
+			column = swap;
+		}
+		if (row < 0 || column >= _size)
+			throw new IndexOutOfBoundsException("(" + row + ", " + column + ") outside a matrix of " + _size + " documents");
+		long r = row;
+		return (int) (r * _size - r * (r - 1) / 2 + (column - row));
+	}
+}
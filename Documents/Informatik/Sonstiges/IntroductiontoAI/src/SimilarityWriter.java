@@ -0,0 +1,138 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * writes the similar documents of every document to a file while they are computed
+ *
+ * the output goes through one ByteBuffer into a FileChannel, so only the buffer
+ * and the neighbours of the rows in flight are in memory, never the whole matrix.
+ *
+ * TSV: one line "document \t neighbour \t similarity" per pair
+ * BINARY (big-endian): int magic, int number of documents, the document names (int length + UTF-8 bytes),
+ *   then per written row: int docID, int number of neighbours, and per neighbour int docID, float similarity
+ *
+ */
+public class SimilarityWriter implements Closeable {
+
+	/**
+	 * format of the output file
+	 */
+	public enum Format { TSV, BINARY }
+
+	private static final int MAGIC = 0x53494D31;		// "SIM1"
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final Format format;
+	private final byte[][] names;						// UTF-8 names of the documents for TSV
+	private long pairs;
+
+	/**
+	 * @param filename - the file to write, replaced if it exists
+	 * @param format
+	 * @param docNames - name of every document at the index of its docID
+	 * @throws IOException - if the file cannot be written
+	 */
+	public SimilarityWriter(String filename, Format format, List<String> docNames) throws IOException {
+		this.format = format;
+		channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		names = new byte[docNames.size()][];
+		for (int d = 0; d < names.length; d++)
+			names[d] = docNames.get(d).getBytes(StandardCharsets.UTF_8);
+		if (format == Format.BINARY) {
+			ensure(8);
+			buffer.putInt(MAGIC).putInt(names.length);
+			for (byte[] name : names) {
+				ensure(4 + name.length);
+				buffer.putInt(name.length).put(name);
+			}
+		}
+	}
+
+	/**
+	 * writes the neighbours of one document
+	 *
+	 * @param docId
+	 * @param neighbours - docIDs of the similar documents
+	 * @param similarities - similarity at the same index as the neighbour
+	 * @param count - number of neighbours
+	 * @throws IOException - if the file cannot be written
+	 */
+	public void writeRow(int docId, int[] neighbours, float[] similarities, int count) throws IOException {
+		if (format == Format.BINARY) {
+			ensure(8);
+			buffer.putInt(docId).putInt(count);
+			for (int i = 0; i < count; i++) {
+				ensure(8);
+				buffer.putInt(neighbours[i]).putFloat(similarities[i]);
+			}
+		}
+		else {
+			for (int i = 0; i < count; i++) {
+				byte[] first = names[docId], second = names[neighbours[i]];
+				ensure(first.length + second.length + 9);
+				buffer.put(first).put((byte) '\t').put(second).put((byte) '\t');
+				putSimilarity(similarities[i]);
+				buffer.put((byte) '\n');
+			}
+		}
+		pairs += count;
+	}
+
+	/**
+	 * writes the similarity with three decimals like the matrix output, without creating Strings
+	 */
+	private void putSimilarity(float similarity) {
+		int thousandths = Math.round(similarity * 1000);
+		if (thousandths < 0) {
+			buffer.put((byte) '-');
+			thousandths = -thousandths;
+		}
+		buffer.put((byte) ('0' + thousandths / 1000)).put((byte) '.');
+		buffer.put((byte) ('0' + thousandths / 100 % 10)).put((byte) ('0' + thousandths / 10 % 10)).put((byte) ('0' + thousandths % 10));
+	}
+
+	/**
+	 * empties the buffer into the channel if fewer than bytes are free
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+			if (buffer.remaining() < bytes)
+				throw new IOException("record of " + bytes + " bytes does not fit into the buffer");
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 *
+	 * @return long value representing the number of pairs written
+	 */
+	public long getPairs() {
+		return pairs;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
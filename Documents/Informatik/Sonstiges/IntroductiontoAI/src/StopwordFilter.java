@@ -0,0 +1,82 @@
+
+import java.util.Collection;
+
+/**
+ * set of stopwords checked by the Tokenizer consumers for every word, so stopwords never reach the Dictionary
+ *
+ * a Bloom filter with HASHES bits per word answers most lookups: almost every word
+ * of a text is no stopword and one of its bits is not set. Only if all bits are set
+ * the word is looked up in the exact set, which removes the false positives.
+ * The filter is not changed after construction and can be shared by threads
+ *
+ */
+public class StopwordFilter {
+
+	private static final int HASHES = 3;			// bits set per word
+	private static final int BITS_PER_WORD = 16;	// about 0.5 % false positives with 3 hashes
+
+	private final long[] bits;
+	private final int mask;
+	private final Dictionary words;				// exact set, only read after construction
+
+	/**
+	 * @param stopwords - the words to filter, in lower case
+	 */
+	public StopwordFilter(Collection<String> stopwords) {
+		int size = 64;
+		while (size < stopwords.size() * BITS_PER_WORD)
+			size <<= 1;
+		bits = new long[size >>> 6];
+		mask = size - 1;
+		words = new Dictionary();
+		for (String word : stopwords) {
+			words.addWord(word);
+			int hash = word.hashCode();
+			int step = step(hash);
+			for (int i = 0; i < HASHES; i++, hash += step)
+				bits[(hash & mask) >>> 6] |= 1L << hash;
+		}
+	}
+
+	/**
+	 * @param buffer
+	 * @param offset - start of the word in buffer
+	 * @param length - length of the word
+	 * @return boolean value - true if the word is a stopword
+	 */
+	public boolean contains(char[] buffer, int offset, int length) {
+		int hash = 0;							// same hash as String.hashCode()
+		for (int i = offset; i < offset + length; i++)
+			hash = 31 * hash + buffer[i];
+		int step = step(hash);
+		for (int i = 0; i < HASHES; i++, hash += step) {
+			if ((bits[(hash & mask) >>> 6] & (1L << hash)) == 0)
+				return false;
+		}
+		return words.indexOfWord(buffer, offset, length) != -1;
+	}
+
+	/**
+	 * @param word
+	 * @return boolean value - true if the word is a stopword
+	 */
+	public boolean contains(String word) {
+		return contains(word.toCharArray(), 0, word.length());
+	}
+
+	/**
+	 *
+	 * @return int value representing the number of stopwords
+	 */
+	public int size() {
+		return words.length();
+	}
+
+	/**
+	 * second hash for double hashing, odd so it reaches every bit
+	 */
+	private static int step(int hash) {
+		hash *= 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) | 1;
+	}
+}
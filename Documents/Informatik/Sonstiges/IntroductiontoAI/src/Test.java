@@ -7,8 +7,41 @@ public class Test {
 	
 	public static void main(String[] args) throws FileNotFoundException, IOException {
 		
+		if (args.length > 0 && args[0].equals("-checks")) {		// runs the deterministic checks instead of the tester
+			runChecks();
+			return;
+		}
 		IRTester test = new IRTester(pathFile);
 		test.run();
 		
 	}
+	
+	/**
+	 * runs every check on small generated corpora, a failed check throws an AssertionError
+	 */
+	static void runChecks() throws IOException {
+		TestDictionary.run();
+		TestQueryEngine.run();
+		TestIndexStore.run();
+		TestIndexUpdater.run();
+		TestSimilarityJoin.run();
+		TestCompressedPostings.run();
+		TestPhraseQueryEngine.run();
+		TestMetricsRegistry.run();
+		TestSegmentedIndex.run();
+		TestIngestionPipeline.run();
+		TestRandomProjection.run();
+		TestTokenizer.run();
+		TestSimilarityEngine.run();
+		System.out.println("all checks passed");
+	}
+	
+	/**
+	 * @param condition - has to be true
+	 * @param message - describes the failed check
+	 */
+	static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
 }
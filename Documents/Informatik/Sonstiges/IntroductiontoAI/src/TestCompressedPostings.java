@@ -0,0 +1,111 @@
+
+import java.util.Random;
+
+/**
+ * walks random postings with the cursors of PostingsList and CompressedPostings
+ * and compares both with the arrays of the list, the sizes cover empty, partial
+ * and full blocks and the gaps and frequencies need from 0 up to 30 bits
+ *
+ */
+class TestCompressedPostings {
+
+	static void run() {
+		Random random = new Random(22);
+		int[] sizes = { 0, 1, 2, 127, 128, 129, 255, 256, 1000, 5000 };
+		int[] maxGaps = { 1, 2, 100, 1 << 16, 1 << 30 };
+		for (int size : sizes) {
+			for (int maxGap : maxGaps) {
+				for (boolean positions : new boolean[] { false, true }) {
+					PostingsList list = randomList(random, size, maxGap, positions);
+					CompressedPostings compressed = new CompressedPostings(list);
+					String label = size + " postings, gaps up to " + maxGap + (positions ? ", positions" : "");
+					Test.check(compressed.size() == size && compressed.cursor().size() == size, label + ": size");
+					checkNext(list, list.cursor(), label + ", PostingsList");
+					checkNext(list, compressed.cursor(), label + ", CompressedPostings");
+					for (int walk = 0; walk < 5; walk++) {
+						long seed = random.nextLong();
+						checkAdvance(list, list.cursor(), new Random(seed), label + ", PostingsList");
+						checkAdvance(list, compressed.cursor(), new Random(seed), label + ", CompressedPostings");
+					}
+				}
+			}
+		}
+		System.out.println("CompressedPostings: cursors match the uncompressed postings");
+	}
+
+	private static PostingsList randomList(Random random, int size, int maxGap, boolean positions) {
+		PostingsList list = new PostingsList(positions);
+		maxGap = Math.min(maxGap, Integer.MAX_VALUE / (size + 1));		// the last docID has to stay below NO_MORE_DOCS
+		int docId = random.nextInt(maxGap);
+		for (int i = 0; i < size; i++) {
+			int frequency = random.nextInt(8) == 0 ? 1 + random.nextInt(1 << (1 + random.nextInt(positions ? 10 : 30))) : 1 + random.nextInt(3);
+			if (positions) {
+				for (int j = 0, position = 0; j < frequency; j++) {
+					position += 1 + random.nextInt(5);
+					list.addOccurrence(docId, position);
+				}
+			}
+			else
+				list.addPosting(docId, frequency, null, 0);
+			docId += 1 + random.nextInt(maxGap);
+		}
+		return list;
+	}
+
+	/**
+	 * visits every posting with next()
+	 */
+	private static void checkNext(PostingsList list, PostingsCursor cursor, String label) {
+		for (int i = 0; i < list.size(); i++) {
+			checkPosting(list, i, cursor, label);
+			cursor.next();
+		}
+		Test.check(cursor.docId() == PostingsCursor.NO_MORE_DOCS, label + ": cursor not exhausted");
+	}
+
+	/**
+	 * mixes next() with advance() to targets inside the current block, in later blocks,
+	 * behind the current posting and behind the last one
+	 */
+	private static void checkAdvance(PostingsList list, PostingsCursor cursor, Random random, String label) {
+		int index = 0;				// posting the cursor has to be at
+		int last = list.size() > 0 ? list.getDocId(list.size() - 1) : 0;
+		while (index < list.size()) {
+			int operation = random.nextInt(4);
+			if (operation == 0) {
+				cursor.next();
+				index++;
+			}
+			else {
+				int current = list.getDocId(index);
+				int target = operation == 1 ? current - random.nextInt(3)						// never moves backwards
+						: operation == 2 ? current + random.nextInt(Math.max(1, (last - current) / 50 + 1))
+						: current + random.nextInt(Math.max(1, last - current + 2));
+				while (index < list.size() && list.getDocId(index) < target)
+					index++;
+				int docId = cursor.advance(target);
+				Test.check(docId == (index < list.size() ? list.getDocId(index) : PostingsCursor.NO_MORE_DOCS),
+						label + ": advance(" + target + ") returned " + docId);
+			}
+			if (index < list.size())
+				checkPosting(list, index, cursor, label);
+		}
+		Test.check(cursor.docId() == PostingsCursor.NO_MORE_DOCS, label + ": cursor not exhausted");
+		Test.check(cursor.advance(last + 1) == PostingsCursor.NO_MORE_DOCS, label + ": advance behind the end");
+	}
+
+	private static void checkPosting(PostingsList list, int index, PostingsCursor cursor, String label) {
+		String posting = label + ", posting " + index;
+		Test.check(cursor.docId() == list.getDocId(index), posting + ": docID " + cursor.docId() + " instead of " + list.getDocId(index));
+		Test.check(cursor.frequency() == list.getFrequency(index), posting + ": frequency");
+		if (!list.hasPositions()) {
+			Test.check(cursor.positions() == null, posting + ": positions of a list without positions");
+			return;
+		}
+		int length = list.getPositionEnd(index) - list.getPositionStart(index);
+		Test.check(cursor.positionEnd() - cursor.positionStart() == length, posting + ": number of positions");
+		for (int i = 0; i < length; i++)
+			Test.check(cursor.positions()[cursor.positionStart() + i] == list.get_positions()[list.getPositionStart(index) + i],
+					posting + ": position " + i);
+	}
+}
@@ -0,0 +1,111 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * writes small generated corpora into a temporary directory and builds their
+ * index the way IRTester does, used by the checks run with "Test -checks"
+ *
+ */
+class TestCorpus {
+
+	private TestCorpus() {
+	}
+
+	/**
+	 * @return a new, empty temporary directory
+	 */
+	static Path createDirectory() throws IOException {
+		return Files.createTempDirectory("ircheck");
+	}
+
+	/**
+	 * writes random documents "doc<i>.txt" made of the words w0 .. w<vocabulary-1>,
+	 * low word numbers are more frequent so the postings have different lengths
+	 *
+	 * @param directory
+	 * @param seed - same seed, same documents
+	 * @param documents - number of documents
+	 * @param vocabulary - number of different words
+	 * @param length - maximum number of words per document
+	 */
+	static void writeRandom(Path directory, long seed, int documents, int vocabulary, int length) throws IOException {
+		Random random = new Random(seed);
+		for (int i = 0; i < documents; i++)
+			writeDocument(directory, "doc" + i + ".txt", randomText(random, vocabulary, 1 + random.nextInt(length)));
+	}
+
+	/**
+	 * @return String of words w0 .. w<vocabulary-1> separated by spaces
+	 */
+	static String randomText(Random random, int vocabulary, int words) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			double r = random.nextDouble();
+			text.append('w').append((int) (r * r * vocabulary)).append(' ');
+		}
+		return text.toString();
+	}
+
+	static void writeDocument(Path directory, String name, String text) throws IOException {
+		Files.write(directory.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the ".txt"-files of the directory sorted by name
+	 */
+	static ArrayList<String> filenames(Path directory) {
+		ArrayList<String> filenames = new ArrayList<>();
+		File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(".txt"));
+		for (File file : files)
+			filenames.add(file.getPath());
+		Collections.sort(filenames);
+		return filenames;
+	}
+
+	/**
+	 * reads the documents and freezes the dictionary, the documents get the final term IDs
+	 *
+	 * @param dictionary - receives the words of all documents
+	 * @param filenames
+	 * @param positions - true if the positions of the words should be kept
+	 * @return the documents in the order of the filenames
+	 */
+	static ArrayList<DocumentTerms> read(Dictionary dictionary, List<String> filenames, boolean positions) {
+		ArrayList<DocumentTerms> documents = new IngestionPipeline(dictionary, 2, positions).run(filenames);
+		int[] remap = dictionary.freeze();
+		for (DocumentTerms document : documents)
+			document.remap(remap);
+		return documents;
+	}
+
+	/**
+	 * @return InvertedIndex of all documents of the directory
+	 */
+	static InvertedIndex index(Path directory, boolean positions) {
+		Dictionary dictionary = new Dictionary();
+		InvertedIndex invertedIndex = new InvertedIndex(dictionary, positions);
+		for (DocumentTerms document : read(dictionary, filenames(directory), positions))
+			invertedIndex.addDocument(document);
+		return invertedIndex;
+	}
+
+	/**
+	 * deletes the directory and the files in it
+	 */
+	static void delete(Path directory) throws IOException {
+		File[] files = directory.toFile().listFiles();
+		if (files != null) {
+			for (File file : files)
+				Files.deleteIfExists(file.toPath());
+		}
+		Files.deleteIfExists(directory);
+	}
+}
@@ -0,0 +1,71 @@
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * compares Dictionary with a HashMap while words are added and removed and
+ * checks the term IDs handed out by freeze()
+ *
+ */
+class TestDictionary {
+
+	static void run() {
+		Dictionary dictionary = new Dictionary();
+		HashMap<String, Integer> expected = new HashMap<>();
+		ArrayList<String> provisional = new ArrayList<>();		// word of every provisional ID
+		Random random = new Random(1);
+		for (int i = 0; i < 5000; i++) {
+			String word = "w" + random.nextInt(3000);
+			if (random.nextInt(4) == 0) {						// removing leaves gaps in the probe sequences
+				Test.check(dictionary.removeWord(word) == (expected.remove(word) != null), "removeWord(" + word + ")");
+				continue;
+			}
+			char[] buffer = (" " + word + " ").toCharArray();
+			int id = random.nextBoolean() ? dictionary.addWord(word) : dictionary.addWord(buffer, 1, word.length());
+			Integer known = expected.putIfAbsent(word, id);
+			if (known != null)
+				Test.check(known == id, "addWord(" + word + ") gave " + id + " instead of " + known);
+			else {
+				Test.check(id == provisional.size(), "provisional ID " + id + " is not the next one " + provisional.size());
+				provisional.add(word);
+			}
+		}
+		for (int i = 0; i < 3000; i++) {
+			String word = "w" + i;
+			Integer id = expected.get(word);
+			Test.check(dictionary.containsWord(word) == (id != null), "containsWord(" + word + ")");
+			Test.check(dictionary.indexOfWord(word) == (id != null ? id : -1), "indexOfWord(" + word + ")");
+		}
+		Test.check(dictionary.length() == expected.size(), "length " + dictionary.length() + " instead of " + expected.size());
+
+		int[] remap = dictionary.freeze();
+		ArrayList<String> sorted = new ArrayList<>(new TreeSet<>(expected.keySet()));
+		Test.check(dictionary.isFrozen() && dictionary.length() == sorted.size(), "length after freeze");
+		Test.check(remap.length == provisional.size(), "remap length " + remap.length);
+		for (int i = 0; i < remap.length; i++) {
+			String word = provisional.get(i);
+			int id = Integer.valueOf(i).equals(expected.get(word)) ? sorted.indexOf(word) : -1;	// a removed word added again got a new ID
+			Test.check(remap[i] == id, "remap of " + word + " is " + remap[i] + " instead of " + id);
+		}
+		for (int id = 0; id < sorted.size(); id++) {
+			Test.check(dictionary.getWord(id).equals(sorted.get(id)), "getWord(" + id + ") after freeze");
+			Test.check(dictionary.indexOfWord(sorted.get(id)) == id, "indexOfWord(" + sorted.get(id) + ") after freeze");
+		}
+		Test.check(!dictionary.containsWord("w3000"), "unknown word found after freeze");
+
+		int[] again = dictionary.freeze();							// freezing again keeps every ID
+		for (int i = 0; i < again.length; i++)
+			Test.check(again[i] == i, "second freeze moved ID " + i);
+		int appended = dictionary.addWord("a");					// sorts first but is appended
+		Test.check(appended == sorted.size() && dictionary.getWord(0).equals(sorted.get(0)), "word added after freeze");
+		try {
+			dictionary.removeWord("a");
+			Test.check(false, "removeWord on a frozen dictionary");
+		} catch (IllegalStateException e) {
+			// expected, frozen IDs are final
+		}
+		System.out.println("Dictionary: add, remove and freeze match a HashMap");
+	}
+}
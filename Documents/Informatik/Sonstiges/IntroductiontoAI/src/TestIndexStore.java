@@ -0,0 +1,118 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * writes an index with deleted documents, opens it again and compares both,
+ * truncated or damaged files have to be rejected with an IOException
+ *
+ */
+class TestIndexStore {
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeRandom(directory, 8, 120, 300, 80);
+			InvertedIndex invertedIndex = TestCorpus.index(directory, true);
+			for (int docId = 3; docId < invertedIndex.getDocIdLimit(); docId += 10)	// left out of the file
+				invertedIndex.deleteDocument(docId);
+
+			String filename = directory.resolve("index.irx").toString();
+			IndexStore.write(invertedIndex, filename);
+			checkEqual(invertedIndex, IndexStore.open(filename));
+			Test.check(!Files.exists(directory.resolve("index.irx.tmp")), "temporary file left behind");
+
+			byte[] file = Files.readAllBytes(directory.resolve("index.irx"));
+			Path damaged = directory.resolve("damaged.irx");
+			for (int length = 0; length < file.length; length += 1 + length / 8) {
+				Files.write(damaged, Arrays.copyOf(file, length));
+				checkRejected(damaged.toString(), "truncated to " + length + " bytes");
+			}
+			byte[] wrongMagic = file.clone();
+			wrongMagic[0] ^= 1;
+			Files.write(damaged, wrongMagic);
+			checkRejected(damaged.toString(), "wrong magic number");
+			byte[] hugeCounts = file.clone();								// the sum of the counts overflows an int
+			ByteBuffer.wrap(hugeCounts).putInt(12, 1 << 30).putInt(16, 1 << 30);
+			Files.write(damaged, hugeCounts);
+			checkRejected(damaged.toString(), "with 2^30 words and documents");
+
+			IndexStore.write(invertedIndex, damaged.toString());				// replaces the damaged file
+			checkEqual(invertedIndex, IndexStore.open(damaged.toString()));
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("IndexStore: opened index matches the written one");
+	}
+
+	/**
+	 * @param original - index which was written, may contain deleted documents
+	 * @param opened - the index read from the file
+	 */
+	private static void checkEqual(InvertedIndex original, InvertedIndex opened) {
+		int[] newDocIds = new int[original.getDocIdLimit()];
+		int documents = 0;
+		for (int docId = 0; docId < newDocIds.length; docId++)
+			newDocIds[docId] = original.isDeleted(docId) ? -1 : documents++;
+		Test.check(opened.getNumberOfDocuments() == documents && opened.getDocIdLimit() == documents, "number of documents");
+		Test.check(opened.isStorePositions() == original.isStorePositions(), "positions flag");
+
+		double[] norms = original.getDocumentNorms(), openedNorms = opened.getDocumentNorms();
+		for (int docId = 0; docId < newDocIds.length; docId++) {
+			if (newDocIds[docId] == -1)
+				continue;
+			Test.check(opened.getDocName(newDocIds[docId]).equals(original.getDocName(docId)), "name of document " + docId);
+			Test.check(openedNorms[newDocIds[docId]] == norms[docId], "norm of document " + docId);
+		}
+
+		Dictionary dictionary = original.getDictionary();
+		Test.check(opened.getDictionary().length() == dictionary.length(), "dictionary length");
+		for (int termId = 0; termId < dictionary.length(); termId++) {
+			String word = dictionary.getWord(termId);
+			Test.check(opened.getDictionary().getWord(termId).equals(word), "word " + termId);
+			PostingsList expected = original.getPostings(termId), actual = opened.getPostings(termId);
+			int size = 0;
+			for (int i = 0; expected != null && i < expected.size(); i++) {
+				int docId = expected.getDocId(i);
+				if (newDocIds[docId] == -1)
+					continue;
+				String posting = word + " in document " + docId;
+				Test.check(actual != null && size < actual.size() && actual.getDocId(size) == newDocIds[docId], posting + " missing");
+				Test.check(actual.getFrequency(size) == expected.getFrequency(i), posting + ": frequency");
+				int[] positions = Arrays.copyOfRange(expected.get_positions(), expected.getPositionStart(i), expected.getPositionEnd(i));
+				int[] openedPositions = Arrays.copyOfRange(actual.get_positions(), actual.getPositionStart(size), actual.getPositionEnd(size));
+				Test.check(Arrays.equals(positions, openedPositions), posting + ": positions");
+				size++;
+			}
+			Test.check((actual == null ? 0 : actual.size()) == size, word + ": postings of deleted documents");
+			Test.check(opened.getDocumentFrequency(termId) == size, word + ": document frequency");
+		}
+
+		QueryEngine originalEngine = new QueryEngine(original), openedEngine = new QueryEngine(opened);
+		Random random = new Random(5);
+		for (int q = 0; q < 20; q++) {
+			String query = TestCorpus.randomText(random, 300, 1 + random.nextInt(4));
+			QueryResult expected = originalEngine.search(query, 10), actual = openedEngine.search(query, 10);
+			Test.check(actual.size() == expected.size(), "\"" + query + "\": number of results");
+			for (int rank = 0; rank < expected.size(); rank++) {
+				Test.check(actual.getDocName(rank).equals(expected.getDocName(rank)), "\"" + query + "\": document at rank " + rank);
+				Test.check(Math.abs(actual.getScore(rank) - expected.getScore(rank)) < 1e-9, "\"" + query + "\": score at rank " + rank);
+			}
+		}
+	}
+
+	private static void checkRejected(String filename, String damage) {
+		try {
+			IndexStore.open(filename);
+			Test.check(false, "file " + damage + " was opened");
+		} catch (IOException e) {
+			// expected
+		} catch (RuntimeException e) {
+			throw new AssertionError("file " + damage + " failed with " + e + " instead of an IOException", e);
+		}
+	}
+}
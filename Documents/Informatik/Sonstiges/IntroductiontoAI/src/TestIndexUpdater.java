@@ -0,0 +1,87 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * adds, modifies and deletes documents of a directory, updates the index with
+ * IndexUpdater and compares it with an index built from scratch
+ *
+ * the modification times are set explicitly, so the check does not depend on
+ * the resolution of the file system clock
+ *
+ */
+class TestIndexUpdater {
+
+	private static final long INDEXED_AT = 1_500_000_000_000L;
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeRandom(directory, 9, 60, 300, 50);
+			for (String filename : TestCorpus.filenames(directory))
+				setModified(directory.resolve(filename), INDEXED_AT - 1000);
+			InvertedIndex invertedIndex = TestCorpus.index(directory, true);
+			IndexUpdater updater = new IndexUpdater(directory.toString(), invertedIndex, new ArrayList<>(), INDEXED_AT);
+			Test.check(!updater.update(), "update without changes changed the index");
+
+			Random random = new Random(10);
+			for (int i = 0; i < 5; i++) {
+				Files.delete(directory.resolve("doc" + (3 * i) + ".txt"));
+				TestCorpus.writeDocument(directory, "doc" + (3 * i + 1) + ".txt", TestCorpus.randomText(random, 350, 40));
+				setModified(directory.resolve("doc" + (3 * i + 1) + ".txt"), INDEXED_AT + 1000);
+				TestCorpus.writeDocument(directory, "new" + i + ".txt", TestCorpus.randomText(random, 350, 40));	// brings new words
+			}
+			Test.check(updater.update(), "update did not change the index");
+			Test.check(updater.getAdded() == 5 && updater.getModified() == 5 && updater.getDeleted() == 5,
+					"found " + updater.getAdded() + " added, " + updater.getModified() + " modified, " + updater.getDeleted() + " deleted");
+			checkEqual(invertedIndex, TestCorpus.index(directory, true));
+
+			Path changed = directory.resolve("new0.txt");				// same modification time, different size
+			FileTime modified = Files.getLastModifiedTime(changed);
+			TestCorpus.writeDocument(directory, "new0.txt", TestCorpus.randomText(random, 350, 60) + " w0 w1");
+			Files.setLastModifiedTime(changed, modified);
+			Test.check(updater.update() && updater.getModified() == 1, "change of the size not found");
+			Test.check(!updater.update(), "second update without changes changed the index");
+			checkEqual(invertedIndex, TestCorpus.index(directory, true));
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("IndexUpdater: updated index matches a full rebuild");
+	}
+
+	private static void setModified(Path file, long millis) throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(millis));
+	}
+
+	/**
+	 * compares document frequencies by word and the results of some queries,
+	 * the term IDs and docIDs of both indexes differ
+	 */
+	private static void checkEqual(InvertedIndex updated, InvertedIndex rebuilt) {
+		Test.check(updated.getNumberOfDocuments() == rebuilt.getNumberOfDocuments(),
+				updated.getNumberOfDocuments() + " documents instead of " + rebuilt.getNumberOfDocuments());
+		Dictionary dictionary = rebuilt.getDictionary();
+		for (int termId = 0; termId < dictionary.length(); termId++) {
+			String word = dictionary.getWord(termId);
+			Test.check(updated.getDocumentFrequency(word) == rebuilt.getDocumentFrequency(termId), word + ": document frequency");
+		}
+
+		QueryEngine updatedEngine = new QueryEngine(updated), rebuiltEngine = new QueryEngine(rebuilt);
+		Random random = new Random(12);
+		for (int q = 0; q < 30; q++) {
+			String query = TestCorpus.randomText(random, 350, 1 + random.nextInt(4));
+			QueryResult expected = rebuiltEngine.search(query, 10), actual = updatedEngine.search(query, 10);
+			Test.check(actual.size() == expected.size(), "\"" + query + "\": number of results");
+			for (int rank = 0; rank < expected.size(); rank++) {
+				Test.check(Math.abs(actual.getScore(rank) - expected.getScore(rank)) < 1e-9, "\"" + query + "\": score at rank " + rank);
+				boolean tied = rank > 0 && Math.abs(expected.getScore(rank - 1) - expected.getScore(rank)) < 1e-9
+						|| rank + 1 < expected.size() && Math.abs(expected.getScore(rank + 1) - expected.getScore(rank)) < 1e-9;
+				Test.check(tied || actual.getDocName(rank).equals(expected.getDocName(rank)), "\"" + query + "\": document at rank " + rank);
+			}
+		}
+	}
+}
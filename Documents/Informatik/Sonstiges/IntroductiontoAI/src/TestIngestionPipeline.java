@@ -0,0 +1,113 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * compares the documents read by the concurrent IngestionPipeline with the words
+ * read one file after another by DocumentModel, and checks that an interrupted
+ * run throws instead of returning part of the documents
+ *
+ */
+class TestIngestionPipeline {
+
+	private static final String[] WORDS = { "the", "and", "Index", "query", "of", "vector", "Term", "a", "document",
+			"cosine", "(weight)", "idf,", "model.", "\"search\"" };
+	private static final String[] STOPWORDS = { "the", "and", "of", "a" };
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			Random random = new Random(7);
+			for (int i = 0; i < 200; i++) {			// more files than the queue holds
+				StringBuilder text = new StringBuilder();
+				for (int j = random.nextInt(80); j > 0; j--)
+					text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(5) == 0 ? "\n" : " ");
+				if (random.nextBoolean())
+					text.append('w').append(random.nextInt(500));
+				TestCorpus.writeDocument(directory, String.format("doc%03d.txt", i), text.toString());
+			}
+			ArrayList<String> filenames = TestCorpus.filenames(directory);
+			filenames.add(100, directory.resolve("missing.txt").toString());	// skipped with an error message
+
+			for (int workers : new int[] { 1, 4 }) {
+				for (boolean positions : new boolean[] { false, true })
+					checkPipeline(filenames, workers, positions);
+			}
+			checkInterrupted(filenames);
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("IngestionPipeline: concurrent ingestion matches reading the files one by one");
+	}
+
+	private static void checkPipeline(ArrayList<String> filenames, int workers, boolean positions) throws IOException {
+		String label = workers + " workers" + (positions ? ", positions" : "");
+		Dictionary dictionary = new Dictionary();
+		IngestionPipeline pipeline = new IngestionPipeline(dictionary, workers, positions);
+		pipeline.setStopwords(new StopwordFilter(Arrays.asList(STOPWORDS)));
+		ArrayList<DocumentTerms> documents = pipeline.run(filenames);
+		Test.check(pipeline.getFailedDocuments() == 1, label + ": " + pipeline.getFailedDocuments() + " failed documents");
+		Test.check(documents.size() == filenames.size() - 1, label + ": " + documents.size() + " documents");
+
+		HashSet<String> stopwords = new HashSet<>(Arrays.asList(STOPWORDS));
+		HashSet<String> vocabulary = new HashSet<>();
+		long tokens = 0;
+		int d = 0;
+		for (String filename : filenames) {
+			if (filename.endsWith("missing.txt"))
+				continue;
+			DocumentTerms document = documents.get(d++);
+			ArrayList<String> words = new DocumentModel(filename).get_wordList();
+			String name = label + ", " + document.getDocName();
+			Test.check(filename.endsWith(document.getDocName()), name + " is not in the order of the files");
+			Test.check(document.getLength() == words.size(), name + ": length " + document.getLength() + " instead of " + words.size());
+			tokens += words.size();
+
+			HashMap<String, Integer> expected = new HashMap<>();
+			for (String word : words) {
+				if (!stopwords.contains(word))
+					expected.merge(word, 1, Integer::sum);
+			}
+			vocabulary.addAll(expected.keySet());
+			Test.check(document.size() == expected.size(), name + ": " + document.size() + " terms instead of " + expected.size());
+			for (int i = 0; i < document.size(); i++) {
+				String word = dictionary.getWord(document.get_termIds()[i]);
+				Test.check(Integer.valueOf(document.get_frequencies()[i]).equals(expected.get(word)), name + ": frequency of " + word);
+			}
+			if (positions) {
+				int[] sequence = document.getTermSequence();
+				Test.check(sequence.length == words.size(), name + ": length of the term sequence");
+				for (int p = 0; p < sequence.length; p++) {
+					String word = words.get(p);
+					Test.check(stopwords.contains(word) ? sequence[p] == -1 : word.equals(dictionary.getWord(sequence[p])),
+							name + ": word at position " + p);
+				}
+			}
+		}
+		Test.check(pipeline.getTokensRead() == tokens, label + ": " + pipeline.getTokensRead() + " tokens instead of " + tokens);
+		Test.check(dictionary.length() == vocabulary.size(), label + ": dictionary holds " + dictionary.length() + " words");
+		for (String word : vocabulary)
+			Test.check(dictionary.containsWord(word), label + ": " + word + " missing in the dictionary");
+	}
+
+	/**
+	 * the interrupt flag stays set and no partial list of documents is returned
+	 */
+	private static void checkInterrupted(ArrayList<String> filenames) {
+		IngestionPipeline pipeline = new IngestionPipeline(new Dictionary(), 2, false);
+		Thread.currentThread().interrupt();
+		try {
+			pipeline.run(filenames);
+			Test.check(false, "interrupted run returned documents");
+		} catch (IllegalStateException e) {
+			Test.check(Thread.interrupted(), "interrupt flag cleared by the pipeline");
+		} finally {
+			Thread.interrupted();
+		}
+	}
+}
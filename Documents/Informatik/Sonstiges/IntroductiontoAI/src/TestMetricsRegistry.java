@@ -0,0 +1,53 @@
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * checks that a stage counts the bytes allocated by its worker threads and
+ * that stages cannot overlap
+ *
+ */
+class TestMetricsRegistry {
+
+	private static final int ARRAY_BYTES = 1 << 20;
+
+	static void run() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		if (MetricsRegistry.threadAllocatedBytes() < 0) {
+			System.out.println("MetricsRegistry: the JVM does not count allocations, check skipped");
+			return;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			MetricsRegistry.Stage stage = metrics.startStage("check");
+			try {
+				metrics.startStage("nested");
+				Test.check(false, "a stage started while another one is running");
+			} catch (IllegalStateException e) {
+				// expected, the peak usage of the heap would be reset
+			}
+			Future<?> worker = pool.submit(() -> {
+				long allocated = MetricsRegistry.threadAllocatedBytes();
+				byte[][] arrays = new byte[4][];
+				for (int i = 0; i < arrays.length; i++)
+					arrays[i] = new byte[ARRAY_BYTES];
+				metrics.addWorkerAllocation(allocated);
+				return arrays.length;
+			});
+			try {
+				worker.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new AssertionError("worker failed", e);
+			}
+			stage.stop();
+			long counted = metrics.counter("stage.check.allocatedBytes").get();
+			Test.check(counted >= 4L * ARRAY_BYTES, "stage counted " + counted + " bytes, the worker allocated " + 4L * ARRAY_BYTES);
+			metrics.startStage("next").stop();				// the stopped stage does not block the next one
+		} finally {
+			pool.shutdownNow();
+		}
+		System.out.println("MetricsRegistry: stages count the allocations of their workers");
+	}
+}
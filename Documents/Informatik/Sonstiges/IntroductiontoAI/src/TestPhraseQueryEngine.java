@@ -0,0 +1,147 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * compares phrase and proximity queries with a search through the words of
+ * every document, over uncompressed and compressed postings
+ *
+ */
+class TestPhraseQueryEngine {
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeDocument(directory, "a.txt", "the quick brown fox jumps over the lazy dog");
+			TestCorpus.writeDocument(directory, "b.txt", "brown quick fox");
+			TestCorpus.writeDocument(directory, "c.txt", "quick brown fox, quick brown fox");
+			TestCorpus.writeDocument(directory, "d.txt", "a quick red brown fox");
+			TestCorpus.writeDocument(directory, "e.txt", "fox brown quick");
+			TestCorpus.writeDocument(directory, "f.txt", "the dog sleeps");			// no word is in every document
+			InvertedIndex small = TestCorpus.index(directory, true);
+			PhraseQueryEngine engine = new PhraseQueryEngine(small);
+			QueryResult result = engine.searchPhrase("quick brown fox", 10);
+			checkNames(result, "quick brown fox", "a.txt", "c.txt");
+			Test.check(result.getDocName(0).equals("c.txt"), "\"quick brown fox\": the document with two matches is not first");
+			checkNames(engine.searchPhrase("brown quick", 10), "brown quick", "b.txt", "e.txt");
+			checkNames(engine.searchPhrase("quick purple fox", 10), "quick purple fox");
+			checkNames(engine.searchNear("quick fox", 2, 10), "quick fox within 2", "a.txt", "b.txt", "c.txt", "e.txt");
+			checkNames(engine.searchNear("fox quick", 1, 10), "fox quick within 1", "b.txt", "c.txt");
+
+			for (String filename : TestCorpus.filenames(directory))
+				Files.delete(directory.resolve(filename));
+			TestCorpus.writeRandom(directory, 23, 150, 20, 30);
+			InvertedIndex invertedIndex = TestCorpus.index(directory, true);
+			HashMap<String, ArrayList<String>> words = new HashMap<>();
+			for (String filename : TestCorpus.filenames(directory)) {
+				String text = new String(Files.readAllBytes(directory.resolve(filename)), "UTF-8");
+				words.put(directory.resolve(filename).getFileName().toString(), DocumentModel.getWords(text));
+			}
+			for (int docId = 0; docId < invertedIndex.getDocIdLimit(); docId += 9)
+				invertedIndex.deleteDocument(docId);
+			checkQueries(invertedIndex, words);
+			invertedIndex.setCompressedPostings(true);
+			checkQueries(invertedIndex, words);
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("PhraseQueryEngine: phrase and proximity matches found by scanning the documents");
+	}
+
+	/**
+	 * @param expected - names of the documents to be found, in any order
+	 */
+	private static void checkNames(QueryResult result, String query, String... expected) {
+		HashSet<String> names = new HashSet<>();
+		for (int rank = 0; rank < result.size(); rank++)
+			names.add(result.getDocName(rank));
+		Test.check(result.size() == expected.length && names.containsAll(Arrays.asList(expected)),
+				"\"" + query + "\": found " + names + " instead of " + Arrays.toString(expected));
+	}
+
+	/**
+	 * @param words - the words of every document by its name
+	 */
+	private static void checkQueries(InvertedIndex invertedIndex, HashMap<String, ArrayList<String>> words) {
+		PhraseQueryEngine engine = new PhraseQueryEngine(invertedIndex);
+		IdfTable idf = invertedIndex.getIdfTable(WeightingScheme.LOG_TF_IDF);
+		double[] norms = invertedIndex.getDocumentNorms();
+		Random random = new Random(24);
+		for (int q = 0; q < 40; q++) {
+			ArrayList<String> query = DocumentModel.getWords(TestCorpus.randomText(random, 20, 2 + random.nextInt(2)));
+			String text = String.join(" ", query);
+			double queryIdf = 0;
+			for (String word : query)
+				queryIdf += idf.idf(invertedIndex.getDictionary().indexOfWord(word));
+
+			QueryResult phrase = engine.searchPhrase(text, invertedIndex.getDocIdLimit());
+			HashSet<String> found = new HashSet<>();
+			for (int rank = 0; rank < phrase.size(); rank++) {
+				int docId = phrase.getDocId(rank);
+				int matches = phraseMatches(words.get(phrase.getDocName(rank)), query);
+				Test.check(matches > 0 && !invertedIndex.isDeleted(docId), "\"" + text + "\": " + phrase.getDocName(rank) + " found");
+				Test.check(Math.abs(phrase.getScore(rank) - (1 + Math.log10(matches)) * queryIdf / norms[docId]) < 1e-9,
+						"\"" + text + "\": score of " + phrase.getDocName(rank));
+				found.add(phrase.getDocName(rank));
+			}
+			checkMissing(invertedIndex, words, found, query, -1, text);
+
+			for (int window = 1; window <= 4; window++) {
+				QueryResult near = engine.searchNear(text, window, invertedIndex.getDocIdLimit());
+				found.clear();
+				for (int rank = 0; rank < near.size(); rank++) {
+					Test.check(near(words.get(near.getDocName(rank)), query, window) && !invertedIndex.isDeleted(near.getDocId(rank)),
+							"\"" + text + "\" within " + window + ": " + near.getDocName(rank) + " found");
+					found.add(near.getDocName(rank));
+				}
+				checkMissing(invertedIndex, words, found, query, window, text);
+			}
+		}
+	}
+
+	/**
+	 * every document which is not deleted and contains the phrase (window -1) or the words
+	 * within the window has to be found, unless its norm is 0
+	 */
+	private static void checkMissing(InvertedIndex invertedIndex, HashMap<String, ArrayList<String>> words, HashSet<String> found,
+			ArrayList<String> query, int window, String text) {
+		double[] norms = invertedIndex.getDocumentNorms();
+		for (int docId = 0; docId < invertedIndex.getDocIdLimit(); docId++) {
+			if (invertedIndex.isDeleted(docId) || norms[docId] == 0)
+				continue;
+			String name = invertedIndex.getDocName(docId);
+			boolean matches = window < 0 ? phraseMatches(words.get(name), query) > 0 : near(words.get(name), query, window);
+			Test.check(!matches || found.contains(name), "\"" + text + "\"" + (window < 0 ? "" : " within " + window) + ": " + name + " missing");
+		}
+	}
+
+	/**
+	 * @return int number of positions at which the phrase starts
+	 */
+	private static int phraseMatches(ArrayList<String> words, ArrayList<String> phrase) {
+		int matches = 0;
+		for (int start = 0; start + phrase.size() <= words.size(); start++) {
+			if (words.subList(start, start + phrase.size()).equals(phrase))
+				matches++;
+		}
+		return matches;
+	}
+
+	/**
+	 * @return true if window + 1 consecutive words hold every word of the query
+	 */
+	private static boolean near(ArrayList<String> words, ArrayList<String> query, int window) {
+		for (int start = 0; start < words.size(); start++) {
+			int end = Math.min(words.size(), start + window + 1);
+			if (words.subList(start, end).containsAll(query))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,117 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * compares the top-k of QueryEngine, which skips documents with MaxScore, with
+ * the cosine similarity of the query to every document computed exhaustively
+ *
+ */
+class TestQueryEngine {
+
+	private static final double EPSILON = 1e-9;
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeRandom(directory, 4, 300, 400, 60);
+			Dictionary dictionary = new Dictionary();
+			ArrayList<DocumentTerms> documents = TestCorpus.read(dictionary, TestCorpus.filenames(directory), false);
+			InvertedIndex invertedIndex = new InvertedIndex(dictionary);
+			for (DocumentTerms document : documents)
+				invertedIndex.addDocument(document);
+
+			for (String name : new String[] { "logtfidf", "augmented", "bm25", "pivoted" })
+				checkQueries(WeightingScheme.forName(name), invertedIndex, documents);
+
+			for (int docId = 0; docId < documents.size(); docId += 7)		// the skipping has to leave out deleted documents
+				invertedIndex.deleteDocument(docId);
+			checkQueries(WeightingScheme.LOG_TF_IDF, invertedIndex, documents);
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("QueryEngine: MaxScore matches exhaustive scoring");
+	}
+
+	private static void checkQueries(WeightingScheme scheme, InvertedIndex invertedIndex, ArrayList<DocumentTerms> documents) {
+		ArrayList<DocumentVectorModel> DVMs = new ArrayList<>();
+		for (DocumentTerms document : documents)
+			DVMs.add(new DocumentVectorModel(document, invertedIndex, scheme));
+		QueryEngine engine = new QueryEngine(invertedIndex, scheme);
+		Random random = new Random(11);
+		for (int q = 0; q < 50; q++) {
+			String query = TestCorpus.randomText(random, 450, 1 + random.nextInt(6));	// some words are not in the index
+			double[] exact = exhaustive(query, scheme, invertedIndex, DVMs);
+			for (int k : new int[] { 1, 5, 20 })
+				checkResult(scheme + " \"" + query + "\" k=" + k, engine.search(query, k), exact, invertedIndex, k);
+		}
+	}
+
+	/**
+	 * @return the cosine similarity of the query to every document, NaN for deleted documents
+	 */
+	private static double[] exhaustive(String query, WeightingScheme scheme, InvertedIndex invertedIndex,
+			ArrayList<DocumentVectorModel> DVMs) {
+		IdfTable idf = invertedIndex.getIdfTable(scheme);
+		TreeMap<Integer, Integer> frequencies = new TreeMap<>();
+		for (String word : DocumentModel.getWords(query)) {
+			int termId = invertedIndex.getDictionary().indexOfWord(word);
+			if (termId >= 0 && idf.idf(termId) > 0)
+				frequencies.merge(termId, 1, Integer::sum);
+		}
+		int maxFrequency = 0, length = 0;
+		for (int frequency : frequencies.values()) {
+			maxFrequency = Math.max(maxFrequency, frequency);
+			length += frequency;
+		}
+		HashMap<Integer, Double> weights = new HashMap<>();
+		double queryNorm = 0;
+		for (Integer termId : frequencies.keySet()) {
+			double weight = QueryEngine.queryWeight(scheme, frequencies.get(termId), maxFrequency, length, idf.idf(termId));
+			weights.put(termId, weight);
+			queryNorm += weight * weight;
+		}
+		queryNorm = Math.sqrt(queryNorm);
+
+		double[] exact = new double[DVMs.size()];
+		for (int docId = 0; docId < exact.length; docId++) {
+			if (invertedIndex.isDeleted(docId)) {
+				exact[docId] = Double.NaN;
+				continue;
+			}
+			DocumentVectorModel DVM = DVMs.get(docId);
+			double dotProduct = 0;
+			for (int i = 0; i < DVM.get_termIds().length; i++) {
+				Double weight = weights.get(DVM.get_termIds()[i]);
+				if (weight != null)
+					dotProduct += weight * DVM.get_weights()[i];
+			}
+			exact[docId] = dotProduct == 0 ? 0 : dotProduct / (queryNorm * DVM.getNorm());
+		}
+		return exact;
+	}
+
+	/**
+	 * every returned score has to be the exact score of its document and the
+	 * scores have to be the k highest exact scores above 0
+	 */
+	private static void checkResult(String label, QueryResult result, double[] exact, InvertedIndex invertedIndex, int k) {
+		double[] expected = Arrays.stream(exact).filter(score -> score > 0).map(score -> -score).sorted().map(score -> -score).toArray();
+		Test.check(result.size() == Math.min(k, expected.length),
+				label + ": " + result.size() + " results, expected " + Math.min(k, expected.length));
+		for (int rank = 0; rank < result.size(); rank++) {
+			int docId = result.getDocId(rank);
+			Test.check(!invertedIndex.isDeleted(docId), label + ": deleted document " + docId + " returned");
+			Test.check(Math.abs(result.getScore(rank) - exact[docId]) < EPSILON,
+					label + ": document " + docId + " scored " + result.getScore(rank) + ", exact " + exact[docId]);
+			Test.check(Math.abs(result.getScore(rank) - expected[rank]) < EPSILON,
+					label + ": rank " + rank + " scored " + result.getScore(rank) + ", expected " + expected[rank]);
+			Test.check(result.getDocName(rank).equals(invertedIndex.getDocName(docId)), label + ": wrong name at rank " + rank);
+		}
+	}
+}
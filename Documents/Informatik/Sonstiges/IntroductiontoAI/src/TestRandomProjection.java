@@ -0,0 +1,61 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * checks that projected vectors have length 1, keep the cosine similarities
+ * approximately and that too many values for one array are rejected
+ *
+ */
+class TestRandomProjection {
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeRandom(directory, 24, 100, 300, 80);
+			Dictionary dictionary = new Dictionary();
+			ArrayList<DocumentTerms> documents = TestCorpus.read(dictionary, TestCorpus.filenames(directory), false);
+			InvertedIndex invertedIndex = new InvertedIndex(dictionary);
+			for (DocumentTerms document : documents)
+				invertedIndex.addDocument(document);
+			ArrayList<DocumentVectorModel> DVMs = new ArrayList<>();
+			for (DocumentTerms document : documents)
+				DVMs.add(new DocumentVectorModel(document, invertedIndex, WeightingScheme.LOG_TF_IDF));
+			DocumentTermMatrix matrix = new DocumentTermMatrix(DVMs);
+
+			int dimension = 1024;
+			RandomProjection projection = new RandomProjection(dimension, 4, 42);
+			float[] vectors = projection.project(matrix, ForkJoinPool.commonPool());
+			Test.check(vectors.length == matrix.rows() * dimension, "length of the projected vectors");
+			double error = 0;
+			int pairs = 0;
+			for (int i = 0; i < matrix.rows(); i++) {
+				double length = 0;
+				for (int c = i * dimension; c < (i + 1) * dimension; c++)
+					length += vectors[c] * vectors[c];
+				Test.check(Math.abs(length - 1) < 1e-4, "row " + i + " has the squared length " + length);
+				for (int j = i + 1; j < matrix.rows(); j++) {
+					double projected = SimilarityKernel.cosineSimilarity(vectors, i * dimension, vectors, j * dimension, dimension);
+					error += Math.abs(projected - matrix.cosineSimilarity(i, j));
+					pairs++;
+				}
+			}
+			Test.check(error / pairs < 0.05, "mean error of the projected similarities is " + error / pairs);
+			Test.check(Arrays.equals(vectors, projection.project(matrix, ForkJoinPool.commonPool())),
+					"the same seed gave a different projection");
+
+			try {
+				new RandomProjection(1 << 30, 1, 42).project(matrix, ForkJoinPool.commonPool());
+				Test.check(false, "projection with more values than one array holds");
+			} catch (IllegalArgumentException e) {
+				// expected, rows * dimension overflows an int
+			}
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("RandomProjection: projected vectors keep the cosine similarities");
+	}
+}
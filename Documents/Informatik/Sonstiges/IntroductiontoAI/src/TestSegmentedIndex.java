@@ -0,0 +1,75 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * compares the scatter-gather queries and the document-term matrix of a
+ * SegmentedIndex with a single index over the same files, for every scheme
+ *
+ */
+class TestSegmentedIndex {
+
+	private static final double EPSILON = 1e-9;
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeRandom(directory, 20, 120, 400, 60);
+			ArrayList<String> filenames = TestCorpus.filenames(directory);
+			Dictionary dictionary = new Dictionary();
+			ArrayList<DocumentTerms> documents = TestCorpus.read(dictionary, filenames, false);
+			InvertedIndex single = new InvertedIndex(dictionary);
+			for (DocumentTerms document : documents)
+				single.addDocument(document);
+
+			for (String name : new String[] { "logtfidf", "augmented", "bm25", "pivoted" }) {
+				WeightingScheme scheme = WeightingScheme.forName(name);
+				SegmentedIndex segmented = new SegmentedIndex(filenames, 3, null, false, scheme);
+				try {
+					Test.check(segmented.getNumberOfDocuments() == single.getNumberOfDocuments(), name + ": number of documents");
+					checkQueries(name, segmented, new QueryEngine(single, scheme));
+					ArrayList<DocumentVectorModel> DVMs = new ArrayList<>();
+					for (DocumentTerms document : documents)
+						DVMs.add(new DocumentVectorModel(document, single, scheme));
+					checkMatrix(name, segmented.toDocumentTermMatrix(scheme), new DocumentTermMatrix(DVMs));
+				} finally {
+					segmented.shutdown();
+				}
+			}
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("SegmentedIndex: segments score like a single index");
+	}
+
+	private static void checkQueries(String name, SegmentedIndex segmented, QueryEngine single) {
+		Random random = new Random(21);
+		for (int q = 0; q < 40; q++) {
+			String query = TestCorpus.randomText(random, 450, 1 + random.nextInt(6));	// repeated and unknown words
+			QueryResult expected = single.search(query, 10), actual = segmented.search(query, 10);
+			String label = name + " \"" + query + "\"";
+			Test.check(actual.size() == expected.size(), label + ": " + actual.size() + " results instead of " + expected.size());
+			for (int rank = 0; rank < expected.size(); rank++) {
+				Test.check(Math.abs(actual.getScore(rank) - expected.getScore(rank)) < EPSILON,
+						label + ": score " + actual.getScore(rank) + " at rank " + rank + " instead of " + expected.getScore(rank));
+				boolean tied = rank > 0 && Math.abs(expected.getScore(rank - 1) - expected.getScore(rank)) < EPSILON
+						|| rank + 1 < expected.size() && Math.abs(expected.getScore(rank + 1) - expected.getScore(rank)) < EPSILON;
+				Test.check(tied || actual.getDocName(rank).equals(expected.getDocName(rank)), label + ": document at rank " + rank);
+			}
+		}
+	}
+
+	/**
+	 * the files are split into contiguous shares, so the global docIDs are the ones of the single index
+	 */
+	private static void checkMatrix(String name, DocumentTermMatrix segmented, DocumentTermMatrix single) {
+		Test.check(segmented.rows() == single.rows(), name + ": rows of the document-term matrix");
+		for (int i = 0; i < single.rows(); i += 3) {
+			for (int j = i; j < single.rows(); j += 7)
+				Test.check(Math.abs(segmented.cosineSimilarity(i, j) - single.cosineSimilarity(i, j)) < 1e-6,
+						name + ": similarity of " + i + " and " + j);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * compares the similarity matrix computed in parallel tiles with the cosine
+ * similarity of every pair, after the index changed so every vector has to
+ * compute its weights again
+ *
+ */
+class TestSimilarityEngine {
+
+	private static final double EPSILON = 1e-6;
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		SimilarityEngine engine = new SimilarityEngine(4);
+		try {
+			TestCorpus.writeRandom(directory, 26, 300, 200, 40);		// several tiles per side
+			Dictionary dictionary = new Dictionary();
+			ArrayList<DocumentTerms> documents = TestCorpus.read(dictionary, TestCorpus.filenames(directory), false);
+			InvertedIndex invertedIndex = new InvertedIndex(dictionary);
+			for (DocumentTerms document : documents)
+				invertedIndex.addDocument(document);
+			ArrayList<DocumentVectorModel> DVMs = new ArrayList<>();
+			DocumentVectorModel.Storage[] storages = DocumentVectorModel.Storage.values();
+			for (int i = 0; i < documents.size(); i++) {
+				DocumentVectorModel vector = new DocumentVectorModel(documents.get(i), invertedIndex, WeightingScheme.LOG_TF_IDF);
+				vector.setStorage(storages[i % storages.length]);
+				DVMs.add(vector);
+			}
+			checkMatrix("computed weights", engine.compute(DVMs), DVMs);
+
+			for (int docId = 0; docId < invertedIndex.getDocIdLimit(); docId += 11)
+				invertedIndex.deleteDocument(docId);				// the idf changes, every vector is outdated
+			checkMatrix("outdated weights", engine.compute(DVMs), DVMs);
+		} finally {
+			engine.shutdown();
+			TestCorpus.delete(directory);
+		}
+		System.out.println("SimilarityEngine: parallel tiles match the pairwise cosine similarity");
+	}
+
+	private static void checkMatrix(String label, SimilarityMatrix matrix, ArrayList<DocumentVectorModel> DVMs) {
+		Test.check(matrix.size() == DVMs.size(), label + ": size of the matrix");
+		for (int i = 0; i < DVMs.size(); i++) {
+			for (int j = i; j < DVMs.size(); j++) {
+				double expected = DocumentVectorModel.cosineSimilarity(DVMs.get(i), DVMs.get(j));
+				Test.check(Math.abs(matrix.get(i, j) - expected) < EPSILON,
+						label + ": similarity of " + i + " and " + j + " is " + matrix.get(i, j) + " instead of " + expected);
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * compares the neighbours found by SimilarityJoin, which leaves out the prefix
+ * of every row, with the cosine similarity of every pair of documents
+ *
+ * the join works with floats, so pairs whose similarity is within EPSILON of
+ * the threshold may be found or not
+ *
+ */
+class TestSimilarityJoin {
+
+	private static final double EPSILON = 1e-5;
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			TestCorpus.writeRandom(directory, 21, 200, 150, 30);
+			Dictionary dictionary = new Dictionary();
+			ArrayList<DocumentTerms> documents = TestCorpus.read(dictionary, TestCorpus.filenames(directory), false);
+			InvertedIndex invertedIndex = new InvertedIndex(dictionary);
+			for (DocumentTerms document : documents)
+				invertedIndex.addDocument(document);
+			ArrayList<DocumentVectorModel> DVMs = new ArrayList<>();
+			for (DocumentTerms document : documents)
+				DVMs.add(new DocumentVectorModel(document, invertedIndex, WeightingScheme.LOG_TF_IDF));
+			DocumentTermMatrix matrix = new DocumentTermMatrix(DVMs);
+
+			for (double threshold : new double[] { 0, 0.1, 0.3, 0.5 })
+				checkJoin(matrix, threshold);
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("SimilarityJoin: prefix-filter join matches brute force");
+	}
+
+	private static void checkJoin(DocumentTermMatrix matrix, double threshold) {
+		SimilarityJoin join = new SimilarityJoin(matrix, threshold);
+		int pairs = 0;
+		for (int row = 0; row < matrix.rows(); row++) {
+			int fromDocId = row % 2 == 0 ? 0 : row + 1;				// every neighbour or only the later ones
+			TreeMap<Integer, Double> found = new TreeMap<>();
+			int[] last = { -1 };
+			final int r = row;
+			join.neighbours(row, fromDocId, (docId, similarity) -> {
+				Test.check(docId > last[0], "threshold " + threshold + ", row " + r + ": neighbours not ascending");
+				last[0] = docId;
+				found.put(docId, similarity);
+			});
+
+			for (int docId = fromDocId; docId < matrix.rows(); docId++) {
+				if (docId == row)
+					continue;
+				double exact = matrix.cosineSimilarity(row, docId);
+				Double similarity = found.remove(docId);
+				String pair = "threshold " + threshold + ", pair " + row + "/" + docId + " (" + exact + ")";
+				if (similarity != null)
+					Test.check(Math.abs(similarity - exact) < EPSILON, pair + " found with similarity " + similarity);
+				boolean expected = exact > 0 && exact >= threshold;
+				if (Math.abs(exact - threshold) >= EPSILON && exact >= EPSILON)
+					Test.check(expected == (similarity != null), pair + (expected ? " not found" : " found"));
+				if (expected)
+					pairs++;
+			}
+			Test.check(found.isEmpty(), "threshold " + threshold + ", row " + row + ": unexpected neighbours " + found.keySet());
+		}
+		Test.check(pairs > 0, "threshold " + threshold + ": no pair to find");
+	}
+}
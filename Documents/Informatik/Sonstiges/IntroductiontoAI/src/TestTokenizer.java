@@ -0,0 +1,98 @@
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * compares the Tokenizer with splitting the text by a StringTokenizer, for
+ * ASCII and UTF-8 text, in memory and from files which are streamed through
+ * the read buffer or memory-mapped
+ *
+ */
+class TestTokenizer {
+
+	private static final String[] WORDS = { "Index", "query", "VECTOR", "cosine", "tf", "x", "\u00DCber", "stra\u00DFe", "GR\u00DCSSE",
+			"na\u00EFve", "\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC", "\u041A\u0438\u0440\u0438\u043B\u043B\u0438\u0446\u0430", "\u65E5\u672C\u8A9E", "\uD83D\uDE00smile", "\u00C6\u00D8\u00C5" };
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+	private static final int MAP_THRESHOLD = 1 << 20;
+
+	static void run() throws IOException {
+		Path directory = TestCorpus.createDirectory();
+		try {
+			Random random = new Random(25);
+			checkText("ascii", "The quick, brown fox (jumps) over\tthe \"lazy\" dog's back... A+B=C; x_y-z [1/2] {3} <4> #5 $6 %7 &8 @9 ^0\r\n");
+			checkText("empty", "");
+			checkText("separators only", " ,.;\r\n");
+			checkText("utf-8", "Gr\u00FC\u00DFe aus K\u00F6ln, \u0152uvre \u00C9COLE na\u00EFve; \u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC \u03A3\u039F\u03A6\u0399\u0391 \u041A\u0438\u0440\u0438\u043B\u043B\u0438\u0446\u0430 \u65E5\u672C\u8A9E \uD83D\uDE00smile");
+			checkText("long word", repeat("Abc", 100) + " " + repeat("\u00E9", 70));
+
+			for (int size : new int[] { 1000, 3 * READ_BUFFER_SIZE, MAP_THRESHOLD + READ_BUFFER_SIZE })
+				checkFile(directory, "random " + size, randomText(random, size));
+
+			// a word and a two-byte character straddle the end of the first read
+			String straddling = repeat(" ", READ_BUFFER_SIZE - 2) + "A\u00FCB " + randomText(random, 5000);
+			checkFile(directory, "buffer boundary", straddling);
+			// the same in a mapped file, the word ends the file without a separator
+			checkFile(directory, "mapped", repeat(" ", READ_BUFFER_SIZE - 2) + "A\u00FCB " + randomText(random, MAP_THRESHOLD) + "LAST");
+		} finally {
+			TestCorpus.delete(directory);
+		}
+		System.out.println("Tokenizer: words match the ones split by a StringTokenizer");
+	}
+
+	/**
+	 * the words as DocumentModel split them before the Tokenizer
+	 */
+	private static ArrayList<String> baseline(String text) {
+		ArrayList<String> words = new ArrayList<>();
+		StringTokenizer tokenizer = new StringTokenizer(text, DocumentModel.SEPARATORS);
+		while (tokenizer.hasMoreElements())
+			words.add(tokenizer.nextToken().trim().toLowerCase());
+		return words;
+	}
+
+	private static void checkText(String label, String text) {
+		compare(label, DocumentModel.getWords(text), baseline(text));
+	}
+
+	/**
+	 * the file is written as UTF-8 which the Tokenizer decodes independently of the platform charset
+	 */
+	private static void checkFile(Path directory, String label, String text) throws IOException {
+		TestCorpus.writeDocument(directory, "file.txt", text);
+		ArrayList<String> expected = baseline(text);
+		compare(label + " text", DocumentModel.getWords(text), expected);
+		compare(label + " file", new DocumentModel(directory.resolve("file.txt").toString()).get_wordList(), expected);
+	}
+
+	private static void compare(String label, ArrayList<String> actual, ArrayList<String> expected) {
+		Test.check(actual.size() == expected.size(), label + ": " + actual.size() + " words instead of " + expected.size());
+		for (int i = 0; i < expected.size(); i++)
+			Test.check(actual.get(i).equals(expected.get(i)), label + ": word " + i + " is " + actual.get(i) + " instead of " + expected.get(i));
+	}
+
+	/**
+	 * @return text of at least the given number of characters, every separator occurs
+	 */
+	private static String randomText(Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < length) {
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+			if (random.nextInt(4) == 0)
+				text.append(random.nextInt(1000));
+			int separators = 1 + random.nextInt(2);
+			for (int i = 0; i < separators; i++)
+				text.append(DocumentModel.SEPARATORS.charAt(random.nextInt(DocumentModel.SEPARATORS.length())));
+		}
+		return text.toString();
+	}
+
+	private static String repeat(String s, int times) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < times; i++)
+			builder.append(s);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,16 @@
+
+/**
+ * Receives the words found by a Tokenizer.
+ */
+public interface TokenConsumer {
+
+    /**
+     * Called for every word in the order of the text. The characters are
+     * already lower case and only valid until this method returns.
+     * 
+     * @param buffer - the characters of the word
+     * @param offset - index of the first character in buffer
+     * @param length - number of characters of the word
+     */
+    void accept(char[] buffer, int offset, int length);
+}
@@ -0,0 +1,177 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Splits text into lower case words without building the whole text or a
+ * word list in memory.
+ * 
+ * Files are read through a FileChannel, large files are memory-mapped and
+ * small files are streamed through one reused buffer. The separators of
+ * DocumentModel are looked up in a precomputed table, ASCII letters are
+ * lowered in place and every word is handed to a TokenConsumer. Files are
+ * decoded as UTF-8; only words containing non-ASCII characters are turned
+ * into a String to be lowered.
+ * 
+ * A Tokenizer reuses its buffers and must not be shared between threads.
+ */
+public class Tokenizer {
+    
+    /**
+     * Files of at least this size are memory-mapped instead of streamed.
+     */
+    private static final long MAP_THRESHOLD = 1 << 20;
+    
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * SEPARATOR[c] is true if the ASCII character c separates words. Control
+     * characters are separators as well, they used to be trimmed off.
+     */
+    private static final boolean[] SEPARATOR = new boolean[128];
+    
+    static {
+        for (int c = 0; c < ' '; c++) {
+            SEPARATOR[c] = true;
+        }
+        for (char c : DocumentModel.SEPARATORS.toCharArray()) {
+            SEPARATOR[c] = true;
+        }
+    }
+    
+    private ByteBuffer _readBuffer;
+    private byte[]     _bytes = new byte[64];   // bytes of the current word when read from a file
+    private char[]     _chars = new char[64];   // characters of the current word
+    private int        _length;
+    private boolean    _nonAscii;               // true if the current word contains non-ASCII bytes
+    
+    /**
+     * Reads the words of a text file.
+     * 
+     * @param filename - the name of the text file to be read
+     * @param consumer - receives every word
+     * 
+     * @throws IOException - if the file cannot be read
+     */
+    public void tokenizeFile(String filename, TokenConsumer consumer) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            _length = 0;
+            _nonAscii = false;
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(Integer.MAX_VALUE, size - position));
+                    scan(mapped, consumer);
+                }
+            }
+            else {
+                if (_readBuffer == null) {
+                    _readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                }
+                _readBuffer.clear();
+                while (channel.read(_readBuffer) != -1) {
+                    _readBuffer.flip();
+                    scan(_readBuffer, consumer);
+                    _readBuffer.clear();
+                }
+            }
+            flushBytes(consumer);
+        }
+    }
+    
+    /**
+     * Splits a text that is already in memory.
+     * 
+     * @param text - the text to be parsed
+     * @param consumer - receives every word
+     */
+    public void tokenize(CharSequence text, TokenConsumer consumer)
+    {
+        _length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && SEPARATOR[c]) {
+                if (_length > 0) {
+                    consumer.accept(_chars, 0, _length);
+                    _length = 0;
+                }
+                continue;
+            }
+            if (_length == _chars.length) {
+                _chars = Arrays.copyOf(_chars, _length * 2);
+            }
+            _chars[_length++] = c < 128 ? toLowerAscii(c) : Character.toLowerCase(c);
+        }
+        if (_length > 0) {
+            consumer.accept(_chars, 0, _length);
+            _length = 0;
+        }
+    }
+    
+    /**
+     * Scans the remaining bytes of the buffer, a word may continue in the next buffer.
+     */
+    private void scan(ByteBuffer buffer, TokenConsumer consumer)
+    {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b >= 0 && SEPARATOR[b]) {
+                flushBytes(consumer);
+                continue;
+            }
+            if (_length == _bytes.length) {
+                _bytes = Arrays.copyOf(_bytes, _length * 2);
+            }
+            if (b < 0) {
+                _nonAscii = true;
+                _bytes[_length++] = b;
+            }
+            else {
+                _bytes[_length++] = (byte) toLowerAscii((char) b);
+            }
+        }
+    }
+    
+    /**
+     * Hands the current word read from a file to the consumer.
+     */
+    private void flushBytes(TokenConsumer consumer)
+    {
+        if (_length == 0) {
+            return;
+        }
+        if (_nonAscii) {
+            String word = new String(_bytes, 0, _length, StandardCharsets.UTF_8).toLowerCase();
+            if (word.length() > _chars.length) {
+                _chars = new char[word.length() * 2];
+            }
+            word.getChars(0, word.length(), _chars, 0);
+            _length = word.length();
+        }
+        else {
+            if (_length > _chars.length) {
+                _chars = new char[_bytes.length];
+            }
+            for (int i = 0; i < _length; i++) {
+                _chars[i] = (char) _bytes[i];
+            }
+        }
+        consumer.accept(_chars, 0, _length);
+        _length = 0;
+        _nonAscii = false;
+    }
+    
+    private static char toLowerAscii(char c)
+    {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
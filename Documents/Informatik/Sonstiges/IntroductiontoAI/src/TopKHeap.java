@@ -0,0 +1,112 @@
+
+/**
+ * keeps the k documents with the highest scores seen so far
+ * implemented as a binary min-heap on two primitive fields, so the lowest of
+ * the k best scores (the threshold a new document has to beat) is at the top
+ *
+ */
+public class TopKHeap {
+
+	private final int[] _docIds;
+	private final double[] _scores;
+	private int _size;
+
+	/**
+	 * @param k - number of documents to keep, at least 1
+	 */
+	public TopKHeap(int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("k has to be at least 1");
+		_docIds = new int[k];
+		_scores = new double[k];
+	}
+
+	/**
+	 * adds the document if the heap is not full yet or its score beats the threshold
+	 *
+	 * @param docId
+	 * @param score
+	 * @return boolean value - true if the document was added
+	 */
+	public boolean offer(int docId, double score) {
+		if (_size < _docIds.length) {
+			int i = _size++;
+			while (i > 0) {								// sift up
+				int parent = (i - 1) >>> 1;
+				if (_scores[parent] <= score)
+					break;
+				_docIds[i] = _docIds[parent];
+				_scores[i] = _scores[parent];
+				i = parent;
+			}
+			_docIds[i] = docId;
+			_scores[i] = score;
+			return true;
+		}
+		if (score <= _scores[0])
+			return false;
+
+		int i = 0;										// replace the top and sift down
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= _size)
+				break;
+			if (child + 1 < _size && _scores[child + 1] < _scores[child])
+				child++;
+			if (_scores[child] >= score)
+				break;
+			_docIds[i] = _docIds[child];
+			_scores[i] = _scores[child];
+			i = child;
+		}
+		_docIds[i] = docId;
+		_scores[i] = score;
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the score a document has to beat to enter the heap, 0 as long as the heap is not full
+	 */
+	public double threshold() {
+		return _size < _docIds.length ? 0 : _scores[0];
+	}
+
+	public boolean isFull() {
+		return _size == _docIds.length;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * returns the docIDs ordered by descending score and writes the according
+	 * scores into the parameter, the heap is left unchanged
+	 *
+	 * @param scores - field of at least size() elements to receive the scores
+	 * @return int field containing the docIDs
+	 */
+	public int[] sorted(double[] scores) {
+		int[] order = new int[_size];
+		for (int i = 0; i < _size; i++) {
+			order[i] = i;
+		}
+		for (int i = 1; i < _size; i++) {				// insertion sort, k is small
+			int current = order[i];
+			int j = i - 1;
+			while (j >= 0 && (_scores[order[j]] < _scores[current]
+					|| (_scores[order[j]] == _scores[current] && _docIds[order[j]] > _docIds[current]))) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = current;
+		}
+		int[] docIds = new int[_size];
+		for (int i = 0; i < _size; i++) {
+			docIds[i] = _docIds[order[i]];
+			scores[i] = _scores[order[i]];
+		}
+		return docIds;
+	}
+}
@@ -0,0 +1,89 @@
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * removes words from the dictionary by their document frequency before it is frozen
+ *
+ * words occurring in fewer than minDocumentFrequency documents (typing errors, numbers),
+ * in more than maxDocumentRatio of all documents (words without meaning for the similarity)
+ * and, if topTerms is set, every word except the topTerms most frequent ones are removed.
+ * Freezing the dictionary afterwards maps their term IDs to -1, so they disappear from
+ * the documents before any weight is computed. Words with the same document frequency
+ * are ranked by the word itself, not by their provisional term IDs which depend on the
+ * order in which the documents were read, so the same words survive in every run
+ *
+ */
+public class VocabularyPruning {
+
+	private final int minDocumentFrequency;
+	private final double maxDocumentRatio;
+	private final int topTerms;
+
+	/**
+	 * @param minDocumentFrequency - minimum number of documents a word has to occur in, 1 keeps every word
+	 * @param maxDocumentRatio - maximum share of the documents a word may occur in, 1 keeps every word
+	 * @param topTerms - number of words with the highest document frequency to keep, 0 for all
+	 */
+	public VocabularyPruning(int minDocumentFrequency, double maxDocumentRatio, int topTerms) {
+		this.minDocumentFrequency = minDocumentFrequency;
+		this.maxDocumentRatio = maxDocumentRatio;
+		this.topTerms = topTerms;
+	}
+
+	/**
+	 * removes the words failing the limits from the dictionary
+	 *
+	 * @param dictionary - not frozen yet
+	 * @param documents - the documents with the provisional term IDs of the dictionary
+	 * @return int value representing the number of removed words
+	 */
+	public int prune(Dictionary dictionary, List<DocumentTerms> documents) {
+		int limit = 0;
+		for (DocumentTerms document : documents) {
+			for (int termId : document.get_termIds())
+				limit = Math.max(limit, termId + 1);
+		}
+		int[] frequencies = new int[limit];
+		for (DocumentTerms document : documents) {
+			for (int termId : document.get_termIds())
+				frequencies[termId]++;
+		}
+
+		double maxFrequency = maxDocumentRatio * documents.size();
+		Integer[] kept = new Integer[limit];	// term IDs of the words within the limits
+		int count = 0;
+		int removed = 0;
+		for (int termId = 0; termId < limit; termId++) {
+			if (frequencies[termId] == 0)
+				continue;
+			if (frequencies[termId] < minDocumentFrequency || frequencies[termId] > maxFrequency) {
+				removed += remove(dictionary, termId);
+				continue;
+			}
+			kept[count++] = termId;
+		}
+		if (topTerms > 0 && count > topTerms) {
+			String[] words = new String[limit];
+			for (int i = 0; i < count; i++)
+				words[kept[i]] = dictionary.getWord(kept[i]);
+			// the lowest document frequencies come first, of equal ones the word sorted last
+			Arrays.sort(kept, 0, count, (a, b) -> frequencies[a] != frequencies[b]
+					? Integer.compare(frequencies[a], frequencies[b]) : words[b].compareTo(words[a]));
+			for (int i = 0; i < count - topTerms; i++)
+				removed += remove(dictionary, kept[i]);
+		}
+		return removed;
+	}
+
+	private static int remove(Dictionary dictionary, int termId) {
+		String word = dictionary.getWord(termId);
+		return word != null && dictionary.removeWord(word) ? 1 : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "document frequency at least " + minDocumentFrequency + ", at most " + maxDocumentRatio
+				+ " of the documents" + (topTerms > 0 ? ", top " + topTerms + " words" : "");
+	}
+}
@@ -0,0 +1,177 @@
+
+/**
+ * weight of a word in a document: tf(...) * idf(...)
+ *
+ * the idf only depends on the index and is computed once per index generation
+ * for every word in an IdfTable shared by all documents, the tf part is computed
+ * for the words of a document only
+ *
+ */
+public interface WeightingScheme {
+
+	/**
+	 * (1 + log10 tf) * log10(N / df), the weighting used so far
+	 */
+	WeightingScheme LOG_TF_IDF = new LogTfIdf();
+
+	/**
+	 * @param documentFrequency - number of documents containing the word, at least 1
+	 * @param numberOfDocuments - number of documents in the index
+	 * @return double value of the weight of the word in the collection, 0 drops the word
+	 */
+	double idf(int documentFrequency, int numberOfDocuments);
+
+	/**
+	 * @param frequency - term frequency in the document, at least 1
+	 * @param maxFrequency - highest term frequency in the document
+	 * @param length - number of indexed words in the document
+	 * @param averageLength - average length of the documents in the index, only known if usesLength()
+	 * @return double value of the weight of the word in the document
+	 */
+	double tf(int frequency, int maxFrequency, int length, double averageLength);
+
+	/**
+	 * @return boolean value - true if tf() needs the average document length
+	 */
+	default boolean usesLength() {
+		return false;
+	}
+
+	/**
+	 * @return boolean value - true if tf() needs the highest term frequency of the document
+	 */
+	default boolean usesMaxFrequency() {
+		return false;
+	}
+
+	/**
+	 * @param name - logtfidf, augmented, bm25 or pivoted
+	 * @return the scheme with its default parameters
+	 */
+	static WeightingScheme forName(String name) {
+		switch (name.toLowerCase()) {
+		case "logtfidf":	return LOG_TF_IDF;
+		case "augmented":	return new AugmentedTfIdf();
+		case "bm25":		return new BM25(1.2, 0.75);
+		case "pivoted":		return new PivotedNormalization(0.2);
+		default:			throw new IllegalArgumentException("unknown weighting scheme " + name);
+		}
+	}
+
+	/**
+	 * (1 + log10 tf) * log10(N / df)
+	 */
+	class LogTfIdf implements WeightingScheme {
+		@Override
+		public double idf(int documentFrequency, int numberOfDocuments) {
+			return Math.log10((double) numberOfDocuments / documentFrequency);
+		}
+
+		@Override
+		public double tf(int frequency, int maxFrequency, int length, double averageLength) {
+			return 1 + Math.log10(frequency);
+		}
+
+		@Override
+		public String toString() {
+			return "log-tf idf";
+		}
+	}
+
+	/**
+	 * (0.5 + 0.5 * tf / max tf) * log10(N / df), long documents do not get larger weights
+	 */
+	class AugmentedTfIdf implements WeightingScheme {
+		@Override
+		public double idf(int documentFrequency, int numberOfDocuments) {
+			return Math.log10((double) numberOfDocuments / documentFrequency);
+		}
+
+		@Override
+		public double tf(int frequency, int maxFrequency, int length, double averageLength) {
+			return 0.5 + 0.5 * frequency / maxFrequency;
+		}
+
+		@Override
+		public boolean usesMaxFrequency() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "augmented tf idf";
+		}
+	}
+
+	/**
+	 * Okapi BM25: tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / average length)) * ln(1 + (N - df + 0.5) / (df + 0.5))
+	 */
+	class BM25 implements WeightingScheme {
+		private final double k1, b;
+
+		/**
+		 * @param k1 - saturation of the term frequency
+		 * @param b - strength of the length normalization between 0 and 1
+		 */
+		public BM25(double k1, double b) {
+			this.k1 = k1;
+			this.b = b;
+		}
+
+		@Override
+		public double idf(int documentFrequency, int numberOfDocuments) {
+			return Math.log(1 + (numberOfDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+		}
+
+		@Override
+		public double tf(int frequency, int maxFrequency, int length, double averageLength) {
+			double norm = averageLength > 0 ? 1 - b + b * length / averageLength : 1;
+			return frequency * (k1 + 1) / (frequency + k1 * norm);
+		}
+
+		@Override
+		public boolean usesLength() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "BM25 (k1 " + k1 + ", b " + b + ")";
+		}
+	}
+
+	/**
+	 * pivoted length normalization: (1 + ln(1 + ln tf)) / (1 - s + s * length / average length) * ln((N + 1) / df)
+	 */
+	class PivotedNormalization implements WeightingScheme {
+		private final double slope;
+
+		/**
+		 * @param slope - s, the strength of the length normalization between 0 and 1
+		 */
+		public PivotedNormalization(double slope) {
+			this.slope = slope;
+		}
+
+		@Override
+		public double idf(int documentFrequency, int numberOfDocuments) {
+			return Math.log((numberOfDocuments + 1.0) / documentFrequency);
+		}
+
+		@Override
+		public double tf(int frequency, int maxFrequency, int length, double averageLength) {
+			double norm = averageLength > 0 ? 1 - slope + slope * length / averageLength : 1;
+			return (1 + Math.log(1 + Math.log(frequency))) / norm;
+		}
+
+		@Override
+		public boolean usesLength() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "pivoted length normalization (s " + slope + ")";
+		}
+	}
+}